@@ -0,0 +1,97 @@
+package com.file.search.indexing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawling a tree of {@code entries} entries written to a temporary directory: indexing it from scratch, and one
+ * pass of the crawler over it after {@code changedDirs} directories changed, if any. The tree is mostly in the
+ * page cache after the first iteration, so this is the cost of the crawler and the system calls it makes, not of
+ * the disk.
+ *
+ * @author ahmad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CrawlBenchmark {
+
+    @Param({"100000"})
+    public int entries;
+
+    private Path root;
+    private List<Path> dirs;
+    private FileIndexer indexer;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("ffs-bench");
+        dirs = new SyntheticTree(entries, SyntheticIndex.SEED).write(root);
+        indexer = SyntheticIndex.indexer(0);
+        indexer.index(Collections.singletonList(root));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        SyntheticTree.delete(root);
+    }
+
+    @Benchmark
+    public void index() {
+        SyntheticIndex.indexer(0).index(Collections.singletonList(root));
+    }
+
+    @Benchmark
+    public void poll(Changes changes) {
+        indexer.getCrawler().pollAll();
+    }
+
+    /**
+     * Changes {@code changedDirs} directories before every pass of the crawler.
+     */
+    @State(Scope.Benchmark)
+    public static class Changes {
+
+        @Param({"0", "100"})
+        public int changedDirs;
+
+        private long touches;
+
+        /**
+         * Moves the modification time of the next {@code changedDirs} directories on, so that the crawler lists
+         * them again.
+         */
+        @Setup(Level.Invocation)
+        public void touch(CrawlBenchmark tree) throws IOException {
+            final List<Path> dirs = tree.dirs;
+            final FileTime time = FileTime.fromMillis(System.currentTimeMillis() + ++touches * 1000L);
+            for (int i = 0; i < changedDirs && !dirs.isEmpty(); i++) {
+                Files.setLastModifiedTime(dirs.get((int) ((touches * changedDirs + i) % dirs.size())), time);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.file.search.indexing;
+
+import com.file.search.FileMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * New entries indexed by several threads at once into an index of {@code entries} entries, as the crawler and a
+ * reindex do: alone, and while queries run on the index. Every iteration starts over from the same index, so the
+ * index only grows by what one iteration adds.
+ *
+ * @author ahmad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class GroupBenchmark {
+
+    private static final int FILES_PER_DIR = 64;
+
+    @Param({"1000000"})
+    public int entries;
+
+    private FileIndexer indexer;
+    private FileMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        System.setProperty(QueryCache.MAX_QUERIES_PROPERTY, "0");
+        matcher = SyntheticIndex.matcher("report", false);
+    }
+
+    @Setup(Level.Iteration)
+    public void newIndex() {
+        indexer = null;
+        indexer = SyntheticIndex.indexer(entries);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void group(Writer writer) {
+        indexer.group(writer.next(), writer.attributes);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void mixedGroup(Writer writer) {
+        indexer.group(writer.next(), writer.attributes);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public List<Path> mixedQuery() {
+        return indexer.find(matcher, QueryBenchmark.LIMIT);
+    }
+
+    /**
+     * Makes up the new files of a thread, in directories of their own.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private static final AtomicInteger THREADS = new AtomicInteger();
+
+        private final Path root = SyntheticIndex.ROOT.resolve("new").resolve("w" + THREADS.getAndIncrement());
+        private final BasicFileAttributes attributes =
+                SyntheticIndex.attributes(false, System.currentTimeMillis(), 1024L);
+        private Path dir;
+        private long count;
+
+        private Path next() {
+            final long n = count++;
+            if (n % FILES_PER_DIR == 0) {
+                dir = root.resolve("d" + n / FILES_PER_DIR);
+            }
+            return dir.resolve("report_" + n + ".txt");
+        }
+
+    }
+
+}
@@ -0,0 +1,618 @@
+package com.file.search.indexing;
+
+import com.file.search.FileMatcher;
+import com.file.search.FileSearch;
+import com.file.search.SearchListener;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Runs the indexer end to end on a {@link SyntheticTree} written to a temporary directory: indexes it with
+ * {@link com.file.search.SearchProcess}, starts the {@link FileCrawler}, and then, for a while, has query threads
+ * run {@link FileSearch#search} as fast as they can while a mutator creates, renames and deletes files and
+ * creates and renames directories in the tree at a steady rate. The names it makes up contain the words queries
+ * look for, and results are not cached unless {@code -cachedQueries} says so, so queries run in full and see the
+ * changes. Reports the latency of the queries, how long it takes for a change to show in query results, and the
+ * heap used; as text, and as JSON to be tracked across releases.
+ * <p>
+ * Limits on the latency of queries and changes and on the heap make it a regression gate: the harness exits with
+ * status 1 if any is exceeded.
+ * <p>
+ * {@code java -cp benchmarks.jar com.file.search.indexing.LoadHarness -entries 1000000 -duration 60 -churn 200}
+ *
+ * @author ahmad
+ */
+public final class LoadHarness {
+
+    private static final String OPT_ENTRIES = "entries";
+    private static final String OPT_DEPTH = "depth";
+    private static final String OPT_FILES = "files";
+    private static final String OPT_DIRS = "dirs";
+    private static final String OPT_HUGE_DIRS = "hugeDirs";
+    private static final String OPT_HUGE_DIR_SIZE = "hugeDirSize";
+    private static final String OPT_SKEW = "skew";
+    private static final String OPT_SEED = "seed";
+    private static final String OPT_DIR = "dir";
+    private static final String OPT_KEEP = "keep";
+    private static final String OPT_THREADS = "threads";
+    private static final String OPT_I = "i";
+    private static final String OPT_LIMIT = "limit";
+    private static final String OPT_CACHED_QUERIES = "cachedQueries";
+    private static final String OPT_DURATION = "duration";
+    private static final String OPT_CHURN = "churn";
+    private static final String OPT_POLL = "poll";
+    private static final String OPT_INTERVAL = "interval";
+    private static final String OPT_TIMEOUT = "timeout";
+    private static final String OPT_OUT = "out";
+    private static final String OPT_MAX_QUERY_P99 = "maxQueryP99";
+    private static final String OPT_MAX_VISIBLE_P99 = "maxVisibleP99";
+    private static final String OPT_MAX_HEAP = "maxHeap";
+    private static final String OPT_HELP = "help";
+
+    /**
+     * Latencies kept per thread; past that, a uniform sample of them.
+     */
+    private static final int MAX_SAMPLES = 1 << 20;
+    private static final long HEAP_SAMPLE_INTERVAL_MILLIS = 100L;
+    private static final long CHECK_INTERVAL_MILLIS = 1L;
+
+    private final CommandLine cli;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    private volatile boolean running = true;
+    private FileIndexer indexer;
+    private Path root;
+    private List<Path> dirs;
+
+    /**
+     * Directories the mutator made and renamed, which files are then created in. Only used by the mutator until
+     * the run ends.
+     */
+    private final List<Path> churnDirs = new ArrayList<>();
+
+    private LoadHarness(CommandLine cli) {
+        this.cli = cli;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = options();
+        final CommandLine cli;
+        try {
+            cli = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("LoadHarness", options);
+            System.exit(2);
+            return;
+        }
+        if (cli.hasOption(OPT_HELP)) {
+            new HelpFormatter().printHelp("LoadHarness", options);
+            return;
+        }
+        System.exit(new LoadHarness(cli).run() ? 0 : 1);
+    }
+
+    private static Options options() {
+        final Options options = new Options();
+        options.addOption(OPT_ENTRIES, true, "entries in the tree, 200000 by default");
+        options.addOption(OPT_DEPTH, true, "levels of directories, 8 by default");
+        options.addOption(OPT_FILES, true, "files per directory on average, 32 by default");
+        options.addOption(OPT_DIRS, true, "directories per directory on average, 4 by default");
+        options.addOption(OPT_HUGE_DIRS, true, "directories of -hugeDirSize files each, none by default");
+        options.addOption(OPT_HUGE_DIR_SIZE, true, "files per huge directory, 100000 by default");
+        options.addOption(OPT_SKEW, true, "how much more often earlier words make up names, 1 (evenly) by default");
+        options.addOption(OPT_SEED, true, "seed of the tree, the queries and the changes");
+        options.addOption(OPT_DIR, true, "directory to write the tree in, the temporary directory by default");
+        options.addOption(OPT_KEEP, "keep the tree when done");
+        options.addOption(OPT_THREADS, true, "query threads, 4 by default");
+        options.addOption(OPT_I, true, "share of queries that ignore case, 0.5 by default");
+        options.addOption(OPT_LIMIT, true, "maximum number of results per query, 100 by default");
+        options.addOption(OPT_CACHED_QUERIES, true, "results of this many queries are cached, none by default");
+        options.addOption(OPT_DURATION, true, "seconds to run queries and changes for, 60 by default");
+        options.addOption(OPT_CHURN, true, "changes per second, 100 by default");
+        options.addOption(OPT_POLL, "poll directories for changes instead of watching them");
+        options.addOption(OPT_INTERVAL, true, "update interval of the crawler in milliseconds, "
+                + FileCrawler.DEFAULT_UPDATE_INTERVAL_MILLIS + " by default");
+        options.addOption(OPT_TIMEOUT, true, "milliseconds after which a change that did not show counts as missed, 60000 by default");
+        options.addOption(OPT_OUT, true, "JSON report file, load-result.json by default");
+        options.addOption(OPT_MAX_QUERY_P99, true, "fail if the 99th percentile of query latency exceeds this many milliseconds");
+        options.addOption(OPT_MAX_VISIBLE_P99, true, "fail if the 99th percentile of the time for a change to show exceeds this many milliseconds");
+        options.addOption(OPT_MAX_HEAP, true, "fail if the heap used ever exceeds this many megabytes");
+        options.addOption(OPT_HELP, "help");
+        return options;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return cli.hasOption(name) ? Integer.parseInt(cli.getOptionValue(name).trim()) : defaultValue;
+    }
+
+    private long longOption(String name, long defaultValue) {
+        return cli.hasOption(name) ? Long.parseLong(cli.getOptionValue(name).trim()) : defaultValue;
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        return cli.hasOption(name) ? Double.parseDouble(cli.getOptionValue(name).trim()) : defaultValue;
+    }
+
+    /**
+     * Runs the whole load, and tells whether it stayed within the limits given.
+     */
+    private boolean run() throws Exception {
+        final int entries = intOption(OPT_ENTRIES, 200_000);
+        final long seed = longOption(OPT_SEED, SyntheticIndex.SEED);
+        final SyntheticTree tree = new SyntheticTree(entries, seed, new SyntheticTree.Shape()
+                .depth(intOption(OPT_DEPTH, 8))
+                .files(intOption(OPT_FILES, 32))
+                .dirs(intOption(OPT_DIRS, 4))
+                .hugeDirs(intOption(OPT_HUGE_DIRS, 0), intOption(OPT_HUGE_DIR_SIZE, 100_000))
+                .skew(doubleOption(OPT_SKEW, 1.0)));
+        final Path parent = Paths.get(cli.getOptionValue(OPT_DIR, System.getProperty("java.io.tmpdir")));
+        root = Files.createTempDirectory(parent, "ffs-load");
+        final Report report = new Report();
+        try {
+            System.out.printf("writing %d entries below %s ...%n", entries, root);
+            long start = System.nanoTime();
+            dirs = tree.write(root);
+            report.writeMillis = millisSince(start);
+
+            final FileCrawler.Mode mode = cli.hasOption(OPT_POLL) ? FileCrawler.Mode.POLL : FileCrawler.Mode.WATCH;
+            System.setProperty(QueryCache.MAX_QUERIES_PROPERTY, Integer.toString(intOption(OPT_CACHED_QUERIES, 0)));
+            indexer = SyntheticIndex.indexer(0, mode,
+                    longOption(OPT_INTERVAL, FileCrawler.DEFAULT_UPDATE_INTERVAL_MILLIS));
+            start = System.nanoTime();
+            indexer.index(Collections.singletonList(root));
+            report.indexMillis = millisSince(start);
+            report.indexHeap = heapAfterGc();
+            peakHeap.set(report.indexHeap);
+            indexer.getCrawler().start();
+
+            final long durationMillis = TimeUnit.SECONDS.toMillis(longOption(OPT_DURATION, 60L));
+            System.out.printf("running queries and changes for %d s ...%n", durationMillis / 1000);
+            final List<Thread> threads = new ArrayList<>();
+            final List<Latencies> queryLatencies = new ArrayList<>();
+            final Random seeds = new Random(seed);
+            for (int i = intOption(OPT_THREADS, 4); i > 0; i--) {
+                final Latencies latencies = new Latencies(seeds.nextLong());
+                final Random random = new Random(seeds.nextLong());
+                queryLatencies.add(latencies);
+                threads.add(thread("query-" + i, () -> query(random, latencies)));
+            }
+            final Latencies visible = new Latencies(seeds.nextLong());
+            final long[][] unseen = {{0L, 0L}};
+            final Random mutatorRandom = new Random(seeds.nextLong());
+            threads.add(thread("mutator", () -> mutate(mutatorRandom)));
+            threads.add(thread("checker", () -> unseen[0] = check(visible)));
+            threads.add(thread("heap", this::sampleHeap));
+            start = System.nanoTime();
+            Thread.sleep(durationMillis);
+            running = false;
+            for (Thread t : threads) {
+                t.join();
+            }
+            report.runMillis = millisSince(start);
+            indexer.getCrawler().stop();
+
+            report.queries = Latencies.merge(queryLatencies);
+            report.visible = visible;
+            report.missed = unseen[0][0];
+            report.pending = unseen[0][1];
+            report.changes = visible.count + report.missed + report.pending;
+            report.peakHeap = peakHeap.get();
+            report.runHeap = heapAfterGc();
+        } finally {
+            if (!cli.hasOption(OPT_KEEP)) {
+                SyntheticTree.delete(root);
+            }
+        }
+        final boolean passed = report.check();
+        report.print();
+        final Path out = Paths.get(cli.getOptionValue(OPT_OUT, "load-result.json"));
+        Files.write(out, report.json(entries).getBytes(UTF_8));
+        System.out.println("report written to " + out);
+        return passed;
+    }
+
+    private static Thread thread(String name, Runnable task) {
+        final Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long heapAfterGc() {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Runs queries for the words names are made of, whole or in part, sorted and limited as the console does.
+     */
+    private void query(Random random, Latencies latencies) {
+        final double ignoreCase = doubleOption(OPT_I, 0.5);
+        final int limit = intOption(OPT_LIMIT, 100);
+        final List<Path> baseDirs = Collections.singletonList(root);
+        final SearchListener listener = new CountingListener();
+        while (running) {
+            final String word = SyntheticTree.WORDS[random.nextInt(SyntheticTree.WORDS.length)];
+            final String name = random.nextBoolean() ? word : word.substring(0, 3 + random.nextInt(word.length() - 2));
+            final boolean caseInsensitive = random.nextDouble() < ignoreCase;
+            final FileMatcher matcher = SyntheticIndex.matcher(
+                    caseInsensitive ? name.toUpperCase(Locale.ROOT) : name, caseInsensitive, baseDirs);
+            final long start = System.nanoTime();
+            FileSearch.search(indexer, matcher, listener, baseDirs, limit, false);
+            latencies.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Makes changes at the rate asked for, in turn: creates a file in a directory picked at random, renames a file,
+     * deletes a file, creates a directory and renames a directory. Only entries whose last change already shows
+     * are renamed or deleted, so that every change is one the index has to catch up with; a file is created instead
+     * if there is none. Directories are renamed once, and files are then created in them too, which only show if
+     * the crawler followed the rename. Every change is handed to the checker to see when it shows.
+     */
+    private void mutate(Random random) {
+        final double churn = doubleOption(OPT_CHURN, 100.0);
+        if (churn <= 0.0) {
+            return;
+        }
+        final long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / churn);
+        final ArrayDeque<Change> created = new ArrayDeque<>();
+        final ArrayDeque<Change> renamed = new ArrayDeque<>();
+        final ArrayDeque<Change> createdDirs = new ArrayDeque<>();
+        final ArrayDeque<Change> renamedDirs = new ArrayDeque<>();
+        long next = System.nanoTime();
+        for (long n = 0L; running; n++) {
+            final long wait = next - System.nanoTime();
+            if (wait > 0L) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            next += periodNanos;
+            final String word = SyntheticTree.WORDS[random.nextInt(SyntheticTree.WORDS.length)];
+            try {
+                // renamed directories are only created in once the rename shows.
+                for (Change c; (c = shown(renamedDirs)) != null; renamedDirs.pollFirst()) {
+                    churnDirs.add(c.appeared);
+                }
+                final Change renamable = shown(created);
+                final Change deletable = shown(renamed);
+                final Change renamableDir = shown(createdDirs);
+                if (n % 5 == 1 && renamable != null) {
+                    created.pollFirst();
+                    final Path target = renamable.appeared.resolveSibling(word + "_moved" + n + ".tmp");
+                    Files.move(renamable.appeared, target);
+                    renamed.addLast(submit(new Change(target, renamable.appeared)));
+                } else if (n % 5 == 2 && deletable != null) {
+                    renamed.pollFirst();
+                    Files.delete(deletable.appeared);
+                    submit(new Change(null, deletable.appeared));
+                } else if (n % 5 == 3) {
+                    final Path dir = randomDir(random).resolve(word + "_dir" + n);
+                    Files.createDirectory(dir);
+                    createdDirs.addLast(submit(new Change(dir, null)));
+                } else if (n % 5 == 4 && renamableDir != null) {
+                    createdDirs.pollFirst();
+                    final Path target = renamableDir.appeared.resolveSibling(word + "_movedDir" + n);
+                    Files.move(renamableDir.appeared, target);
+                    renamedDirs.addLast(submit(new Change(target, renamableDir.appeared)));
+                } else {
+                    final Path file = randomDir(random).resolve(word + "_churn" + n + ".tmp");
+                    Files.createFile(file);
+                    created.addLast(submit(new Change(file, null)));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns a directory of the tree or one the mutator made and renamed, picked at random.
+     */
+    private Path randomDir(Random random) {
+        final int i = random.nextInt(dirs.size() + churnDirs.size());
+        return i < dirs.size() ? dirs.get(i) : churnDirs.get(i - dirs.size());
+    }
+
+    private Change submit(Change c) {
+        changes.add(c);
+        return c;
+    }
+
+    /**
+     * Returns the oldest of {@code files} if its change shows, dropping those that never showed.
+     */
+    private static Change shown(ArrayDeque<Change> files) {
+        Change c;
+        while ((c = files.peekFirst()) != null && c.state == Change.MISSED) {
+            files.pollFirst();
+        }
+        return c != null && c.state == Change.VISIBLE ? c : null;
+    }
+
+    /**
+     * Queries for every change until it shows, and records how long that took; returns the number of changes
+     * that did not show in time, and of those yet to show when the run ended.
+     */
+    private long[] check(Latencies visible) {
+        final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(longOption(OPT_TIMEOUT, 60_000L));
+        final List<Change> pending = new ArrayList<>();
+        long missed = 0L;
+        while (running) {
+            for (Change c; (c = changes.poll()) != null; ) {
+                pending.add(c);
+            }
+            for (Iterator<Change> it = pending.iterator(); it.hasNext(); ) {
+                final Change c = it.next();
+                final long now = System.nanoTime();
+                if (c.isVisible(indexer)) {
+                    visible.add(now - c.madeAt);
+                    c.state = Change.VISIBLE;
+                    it.remove();
+                } else if (now - c.madeAt > timeoutNanos) {
+                    missed++;
+                    c.state = Change.MISSED;
+                    it.remove();
+                }
+            }
+            try {
+                Thread.sleep(CHECK_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        return new long[]{missed, pending.size() + changes.size()};
+    }
+
+    private void sampleHeap() {
+        while (running) {
+            peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            try {
+                Thread.sleep(HEAP_SAMPLE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A change made to the tree: a file that appeared, one that is gone, or both for a rename.
+     */
+    private static final class Change {
+
+        private static final int PENDING = 0;
+        private static final int VISIBLE = 1;
+        private static final int MISSED = 2;
+
+        private final Path appeared;
+        private final Path gone;
+        private final long madeAt = System.nanoTime();
+        private volatile int state = PENDING;
+
+        private Change(Path appeared, Path gone) {
+            this.appeared = appeared;
+            this.gone = gone;
+        }
+
+        private boolean isVisible(FileIndexer indexer) {
+            return (appeared == null || found(indexer, appeared)) && (gone == null || !found(indexer, gone));
+        }
+
+        /**
+         * Tells whether {@code file} is among the results of a query for its name, which few others contain.
+         */
+        private static boolean found(FileIndexer indexer, Path file) {
+            final String name = file.getFileName().toString();
+            final FileMatcher matcher = SyntheticIndex.matcher(name, false,
+                    Collections.singletonList(file.getParent()));
+            return indexer.find(matcher).contains(file);
+        }
+
+    }
+
+    /**
+     * Latencies in nanoseconds, all of them up to {@link #MAX_SAMPLES}, a uniform sample of them past that.
+     * Filled by a single thread.
+     */
+    private static final class Latencies {
+
+        private final Random random;
+        private long[] samples = new long[1024];
+        private int size;
+        private long count;
+        private long max;
+
+        private Latencies(long seed) {
+            random = new Random(seed);
+        }
+
+        private void add(long nanos) {
+            count++;
+            max = Math.max(max, nanos);
+            if (size < MAX_SAMPLES) {
+                if (size == samples.length) {
+                    samples = Arrays.copyOf(samples, size << 1);
+                }
+                samples[size++] = nanos;
+            } else {
+                final long i = (long) (random.nextDouble() * count);
+                if (i < MAX_SAMPLES) {
+                    samples[(int) i] = nanos;
+                }
+            }
+        }
+
+        private static Latencies merge(List<Latencies> all) {
+            final Latencies merged = new Latencies(0L);
+            int size = 0;
+            for (Latencies l : all) {
+                size += l.size;
+                merged.count += l.count;
+                merged.max = Math.max(merged.max, l.max);
+            }
+            merged.samples = new long[Math.max(1, size)];
+            for (Latencies l : all) {
+                System.arraycopy(l.samples, 0, merged.samples, merged.size, l.size);
+                merged.size += l.size;
+            }
+            return merged;
+        }
+
+        /**
+         * Returns the {@code p}th percentile in milliseconds, or {@code 0} if there are no latencies.
+         */
+        private double percentile(double p) {
+            if (size == 0) {
+                return 0.0;
+            }
+            final long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            final int i = (int) Math.min(size - 1, Math.ceil(p / 100.0 * size) - 1);
+            return sorted[Math.max(0, i)] / 1e6;
+        }
+
+        private double maxMillis() {
+            return max / 1e6;
+        }
+
+    }
+
+    private final class Report {
+
+        private long writeMillis;
+        private long indexMillis;
+        private long runMillis;
+        private long indexHeap;
+        private long peakHeap;
+        private long runHeap;
+        private Latencies queries;
+        private Latencies visible;
+        private long changes;
+        private long missed;
+        private long pending;
+        private final List<String> failures = new ArrayList<>();
+
+        private boolean check() {
+            if (cli.hasOption(OPT_MAX_QUERY_P99) && queries.percentile(99) > doubleOption(OPT_MAX_QUERY_P99, 0)) {
+                failures.add("query p99 " + format(queries.percentile(99)) + " ms > " + cli.getOptionValue(OPT_MAX_QUERY_P99));
+            }
+            if (cli.hasOption(OPT_MAX_VISIBLE_P99) && (visible.percentile(99) > doubleOption(OPT_MAX_VISIBLE_P99, 0) || missed > 0)) {
+                failures.add("visibility p99 " + format(visible.percentile(99)) + " ms > " + cli.getOptionValue(OPT_MAX_VISIBLE_P99)
+                        + " or " + missed + " changes missed");
+            }
+            if (cli.hasOption(OPT_MAX_HEAP) && peakHeap > (long) (doubleOption(OPT_MAX_HEAP, 0) * (1 << 20))) {
+                failures.add("peak heap " + peakHeap / (1 << 20) + " MB > " + cli.getOptionValue(OPT_MAX_HEAP));
+            }
+            return failures.isEmpty();
+        }
+
+        private void print() {
+            final PrintWriter out = new PrintWriter(System.out, true);
+            out.printf("%ntree      : written in %d ms%n", writeMillis);
+            out.printf("index     : %d ms, heap %d MB%n", indexMillis, indexHeap >> 20);
+            out.printf("queries   : %d in %d ms (%s/s)%n", queries.count, runMillis,
+                    format(queries.count * 1000.0 / Math.max(1, runMillis)));
+            out.printf("  latency : p50 %s ms, p90 %s ms, p99 %s ms, p99.9 %s ms, max %s ms%n",
+                    format(queries.percentile(50)), format(queries.percentile(90)), format(queries.percentile(99)),
+                    format(queries.percentile(99.9)), format(queries.maxMillis()));
+            out.printf("changes   : %d, %d missed, %d yet to show at the end%n", changes, missed, pending);
+            out.printf("  visible : p50 %s ms, p90 %s ms, p99 %s ms, max %s ms%n",
+                    format(visible.percentile(50)), format(visible.percentile(90)), format(visible.percentile(99)),
+                    format(visible.maxMillis()));
+            out.printf("heap      : peak %d MB, after run %d MB%n", peakHeap >> 20, runHeap >> 20);
+            out.println(failures.isEmpty() ? "passed" : "failed : " + String.join("; ", failures));
+        }
+
+        private String json(int entries) {
+            return "{\n"
+                    + "  \"config\": {\"entries\": " + entries
+                    + ", \"threads\": " + intOption(OPT_THREADS, 4)
+                    + ", \"cachedQueries\": " + intOption(OPT_CACHED_QUERIES, 0)
+                    + ", \"churn\": " + doubleOption(OPT_CHURN, 100.0)
+                    + ", \"mode\": \"" + (cli.hasOption(OPT_POLL) ? "poll" : "watch") + "\""
+                    + ", \"durationMillis\": " + runMillis + "},\n"
+                    + "  \"tree\": {\"writeMillis\": " + writeMillis + ", \"dirs\": " + dirs.size()
+                    + ", \"churnDirs\": " + churnDirs.size() + "},\n"
+                    + "  \"index\": {\"millis\": " + indexMillis + ", \"heapBytes\": " + indexHeap + "},\n"
+                    + "  \"queries\": {\"count\": " + queries.count
+                    + ", \"perSecond\": " + format(queries.count * 1000.0 / Math.max(1, runMillis))
+                    + ", \"p50Millis\": " + format(queries.percentile(50))
+                    + ", \"p90Millis\": " + format(queries.percentile(90))
+                    + ", \"p99Millis\": " + format(queries.percentile(99))
+                    + ", \"p999Millis\": " + format(queries.percentile(99.9))
+                    + ", \"maxMillis\": " + format(queries.maxMillis()) + "},\n"
+                    + "  \"visibility\": {\"changes\": " + changes + ", \"missed\": " + missed + ", \"pending\": " + pending
+                    + ", \"p50Millis\": " + format(visible.percentile(50))
+                    + ", \"p90Millis\": " + format(visible.percentile(90))
+                    + ", \"p99Millis\": " + format(visible.percentile(99))
+                    + ", \"maxMillis\": " + format(visible.maxMillis()) + "},\n"
+                    + "  \"heap\": {\"afterIndexBytes\": " + indexHeap + ", \"peakBytes\": " + peakHeap
+                    + ", \"afterRunBytes\": " + runHeap + "},\n"
+                    + "  \"passed\": " + failures.isEmpty() + "\n"
+                    + "}\n";
+        }
+
+        private String format(double value) {
+            return String.format(Locale.ROOT, "%.3f", value);
+        }
+
+    }
+
+    private static final class CountingListener implements SearchListener {
+
+        private long results;
+
+        @Override
+        public void onStart(long when, String pattern) {
+        }
+
+        @Override
+        public void onResult(String path) {
+            results++;
+        }
+
+        @Override
+        public void onChangeDirectory(String path) {
+        }
+
+        @Override
+        public void onComplete(long when) {
+        }
+
+    }
+
+}
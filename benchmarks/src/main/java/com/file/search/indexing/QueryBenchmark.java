@@ -0,0 +1,96 @@
+package com.file.search.indexing;
+
+import com.file.search.FileMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name queries on an index of {@code entries} entries: the first {@link #LIMIT} results in order, and every
+ * result unordered. Results are not cached unless {@code cachedQueries} says so, so every query is run in full.
+ * <p>
+ * {@code name} is a word most names hold ({@code report}), a word and a number few hold ({@code _7.j}), and one
+ * no name holds ({@code zqxv}); matched regardless of case, {@code RePoRt} also matches the names in capitals.
+ *
+ * @author ahmad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class QueryBenchmark {
+
+    static final int LIMIT = 100;
+
+    @Param({"1000000"})
+    public int entries;
+
+    @Param({"report", "_7.j", "zqxv"})
+    public String name;
+
+    @Param({"0"})
+    public int cachedQueries;
+
+    private FileIndexer indexer;
+    private FileMatcher caseSensitive;
+    private FileMatcher caseInsensitive;
+
+    @Setup
+    public void setUp() {
+        System.setProperty(QueryCache.MAX_QUERIES_PROPERTY, Integer.toString(cachedQueries));
+        indexer = SyntheticIndex.indexer(entries);
+        caseSensitive = SyntheticIndex.matcher(name, false);
+        caseInsensitive = SyntheticIndex.matcher(invertCase(name), true);
+    }
+
+    private static String invertCase(String s) {
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            sb.append(i % 2 == 0 ? Character.toUpperCase(c) : Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public List<Path> substring() {
+        return indexer.find(caseSensitive, LIMIT);
+    }
+
+    @Benchmark
+    public List<Path> caseInsensitive() {
+        return indexer.find(caseInsensitive, LIMIT);
+    }
+
+    @Benchmark
+    public void substringAll(Blackhole bh) {
+        indexer.find(caseSensitive, path -> {
+            bh.consume(path);
+            return true;
+        });
+    }
+
+    @Benchmark
+    public void caseInsensitiveAll(Blackhole bh) {
+        indexer.find(caseInsensitive, path -> {
+            bh.consume(path);
+            return true;
+        });
+    }
+
+}
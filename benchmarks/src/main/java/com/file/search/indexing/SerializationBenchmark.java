@@ -0,0 +1,81 @@
+package com.file.search.indexing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index files of {@code entries} entries: writing a checkpoint, mapping it, and loading it the way the indexer
+ * does at startup, that is mapping it and then building the trigram and metadata indexes, which are not in the
+ * file.
+ *
+ * @author ahmad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class SerializationBenchmark {
+
+    @Param({"1000000"})
+    public int entries;
+
+    private NodeTable table;
+    private Path written;
+    private Path read;
+
+    @Setup
+    public void setUp() throws IOException {
+        table = SyntheticIndex.table(entries, new TrigramIndex());
+        written = Files.createTempFile("ffs-bench", ".ffs");
+        read = Files.createTempFile("ffs-bench", ".ffs");
+        table.write(read);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(written);
+        Files.deleteIfExists(read);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        table.write(written);
+    }
+
+    @Benchmark
+    public NodeTable read() throws IOException {
+        return NodeTable.read(read);
+    }
+
+    @Benchmark
+    public TrigramIndex load() throws IOException {
+        final NodeTable t = NodeTable.read(read);
+        final NameTable names = t.names();
+        final TrigramIndex trigrams = new TrigramIndex();
+        for (int nameId = 0; nameId < names.size(); nameId++) {
+            if (names.getFirstNode(nameId) != NameTable.NONE) {
+                trigrams.add(nameId, names.name(nameId));
+            }
+        }
+        t.buildSortedIndexes();
+        return trigrams;
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.file.search.indexing;
+
+import com.file.search.DefaultFileMatcher;
+import com.file.search.FileMatcher;
+import com.file.search.NameMode;
+import com.file.search.util.FileUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Indexes of a {@link SyntheticTree}, built in memory without touching the disk.
+ *
+ * @author ahmad
+ */
+final class SyntheticIndex {
+
+    static final Path ROOT = Paths.get("/ffs-bench");
+    static final long SEED = 0x5EEDL;
+
+    private SyntheticIndex() {
+    }
+
+    /**
+     * Returns a table of {@code entries} entries below {@link #ROOT}, keeping the trigrams of its names in
+     * {@code names}.
+     */
+    static NodeTable table(int entries, TrigramIndex names) {
+        final NodeTable t = FileIndexer.newTable(names);
+        new SyntheticTree(entries, SEED).forEach(ROOT, (path, directory, lastModified, size) -> {
+            final String name = path.getFileName().toString();
+            final byte attributes = (byte) ((directory ? NodeTable.DIRECTORY : NodeTable.REGULAR)
+                    | (name.startsWith(".") ? NodeTable.HIDDEN : 0));
+            t.add(path, attributes, lastModified, size, lastModified,
+                    (directory ? FileUtils.S_IFDIR | 0755 : FileUtils.S_IFREG | 0644));
+        });
+        return t;
+    }
+
+    /**
+     * Returns an indexer of {@code entries} entries below {@link #ROOT}, kept in memory only and not crawled.
+     */
+    static FileIndexer indexer(int entries) {
+        return indexer(entries, FileCrawler.Mode.POLL, FileCrawler.DEFAULT_UPDATE_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Returns an indexer of {@code entries} entries below {@link #ROOT}, kept in memory only, whose crawler is
+     * yet to be started.
+     */
+    static FileIndexer indexer(int entries, FileCrawler.Mode crawlerMode, long updateIntervalMillis) {
+        final TrigramIndex names = new TrigramIndex();
+        return new FileIndexer(table(entries, names), names, crawlerMode, updateIntervalMillis);
+    }
+
+    static FileMatcher matcher(String name, boolean caseInsensitive) {
+        return matcher(name, caseInsensitive, Collections.singletonList(ROOT));
+    }
+
+    static FileMatcher matcher(String name, boolean caseInsensitive, List<Path> baseDirs) {
+        final FileMatcher matcher = new DefaultFileMatcher();
+        matcher.setName(name);
+        matcher.setNameMode(NameMode.LITERAL);
+        matcher.setCaseInsensitive(caseInsensitive);
+        matcher.setHiddenFilesIncluded(true);
+        matcher.setBaseDirectories(baseDirs);
+        return matcher;
+    }
+
+    static BasicFileAttributes attributes(boolean directory, long lastModified, long size) {
+        return new Attributes(directory, lastModified, size);
+    }
+
+    private static final class Attributes implements BasicFileAttributes {
+
+        private final boolean directory;
+        private final FileTime lastModified;
+        private final long size;
+
+        private Attributes(boolean directory, long lastModified, long size) {
+            this.directory = directory;
+            this.lastModified = FileTime.fromMillis(lastModified);
+            this.size = size;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return lastModified;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return lastModified;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return lastModified;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !directory;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.file.search.indexing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A made up tree of entries, with the same paths for the same size, seed and {@link Shape}. Directories hold a few
+ * dozen files and a few directories each, a few levels deep; names are words with a number and an extension, a
+ * quarter of them written in capitals, and some, like {@code README.md} or {@code index.js}, recur in many
+ * directories, as they do on a real disk. Every entry is made up as it is passed on, so a tree of any size costs
+ * no memory of its own.
+ *
+ * @author ahmad
+ */
+final class SyntheticTree {
+
+    static final String[] WORDS = {
+            "report", "invoice", "config", "index", "main", "util", "test", "photo", "backup", "draft", "notes",
+            "build", "cache", "module", "service", "client", "server", "schema", "layout", "theme", "video", "track",
+            "summary", "budget", "project", "release", "package", "library", "render", "parser", "handler", "model"
+    };
+
+    private static final String[] EXTENSIONS = {
+            ".txt", ".java", ".js", ".json", ".md", ".jpg", ".png", ".pdf", ".xml", ".log", ".csv", ".html", ".py",
+            ".c", ".h", ".mp3", ".zip", ".docx"
+    };
+
+    private static final String[] RECURRING = {
+            "README.md", "index.js", "Makefile", "pom.xml", ".gitignore", "__init__.py", "LICENSE", "package.json"
+    };
+
+    private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+    private final int entries;
+    private final long seed;
+    private final Shape shape;
+
+    SyntheticTree(int entries, long seed) {
+        this(entries, seed, new Shape());
+    }
+
+    SyntheticTree(int entries, long seed, Shape shape) {
+        this.entries = entries;
+        this.seed = seed;
+        this.shape = shape;
+    }
+
+    /**
+     * Passes every entry below {@code root} to {@code visitor}, each directory before its entries. The huge
+     * directories come first, then as many trees as it takes to make up the rest.
+     */
+    void forEach(Path root, Visitor visitor) {
+        final Random random = new Random(seed);
+        final long now = System.currentTimeMillis();
+        final int[] left = {entries};
+        for (int k = 0; k < shape.hugeDirs && left[0] > 0; k++) {
+            final Path dir = root.resolve("huge" + k);
+            left[0]--;
+            visitor.visit(dir, true, modified(random, now), 4096L);
+            for (int j = 0; j < shape.hugeDirSize && left[0] > 0; j++, left[0]--) {
+                visitor.visit(dir.resolve(fileName(random, j)), false, modified(random, now), size(random));
+            }
+        }
+        while (left[0] > 0) {
+            // a tree is full at some size; the next one goes beside it.
+            final Path dir = root.resolve("tree" + (entries - left[0]));
+            left[0]--;
+            visitor.visit(dir, true, modified(random, now), 4096L);
+            walk(dir, 1, random, now, left, visitor);
+        }
+    }
+
+    /**
+     * Writes the tree below {@code root} as empty files, and returns its directories. Files get their made up
+     * modification times; directories keep the time their last entry was written.
+     */
+    List<Path> write(Path root) throws IOException {
+        final List<Path> dirs = new ArrayList<>();
+        try {
+            forEach(root, (path, directory, lastModified, size) -> {
+                try {
+                    if (directory) {
+                        Files.createDirectory(path);
+                        dirs.add(path);
+                    } else {
+                        Files.createFile(path);
+                        Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return dirs;
+    }
+
+    /**
+     * Deletes {@code root} and everything below it.
+     */
+    static void delete(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void walk(Path dir, int depth, Random random, long now, int[] left, Visitor visitor) {
+        final int files = Math.max(1, shape.files / 4) + random.nextInt(shape.files * 3 / 2 + 1);
+        for (int j = 0; j < files && left[0] > 0; j++, left[0]--) {
+            final String name = j < RECURRING.length && random.nextInt(4) == 0 ? RECURRING[j] : fileName(random, j);
+            visitor.visit(dir.resolve(name), false, modified(random, now), size(random));
+        }
+        if (depth >= shape.depth) {
+            return;
+        }
+        final int dirs = shape.dirs / 2 + random.nextInt(shape.dirs + 1);
+        for (int j = 0; j < dirs && left[0] > 0; j++, left[0]--) {
+            final Path child = dir.resolve(dirName(random, j));
+            visitor.visit(child, true, modified(random, now), 4096L);
+            walk(child, depth + 1, random, now, left, visitor);
+        }
+    }
+
+    private String word(Random random) {
+        return WORDS[(int) (WORDS.length * Math.pow(random.nextDouble(), shape.skew))];
+    }
+
+    private String fileName(Random random, int j) {
+        final String word = word(random);
+        return (random.nextInt(4) == 0 ? word.toUpperCase(Locale.ROOT) : word) + '_' + j
+                + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+    }
+
+    private String dirName(Random random, int j) {
+        final String word = word(random);
+        return random.nextInt(16) == 0 ? "." + word + j : word + j;
+    }
+
+    private static long modified(Random random, long now) {
+        return now - (long) (random.nextDouble() * 5 * YEAR_MILLIS);
+    }
+
+    /**
+     * Sizes spread over orders of magnitude, from bytes to megabytes.
+     */
+    private static long size(Random random) {
+        return 1L << random.nextInt(24);
+    }
+
+    interface Visitor {
+
+        void visit(Path path, boolean directory, long lastModified, long size);
+
+    }
+
+    /**
+     * How a tree is laid out. Directories hold about {@link #files(int) files} files and {@link #dirs(int) dirs}
+     * directories, down to {@link #depth(int) depth} levels. Words are picked evenly at a {@link #skew(double)}
+     * of {@code 1}, and ever more often the earlier they come in {@link #WORDS} above that.
+     */
+    static final class Shape {
+
+        private int depth = 8;
+        private int files = 32;
+        private int dirs = 4;
+        private int hugeDirs;
+        private int hugeDirSize = 100_000;
+        private double skew = 1.0;
+
+        Shape depth(int depth) {
+            this.depth = Math.max(1, depth);
+            return this;
+        }
+
+        Shape files(int files) {
+            this.files = Math.max(1, files);
+            return this;
+        }
+
+        Shape dirs(int dirs) {
+            this.dirs = Math.max(1, dirs);
+            return this;
+        }
+
+        /**
+         * Adds {@code count} directories of {@code size} files each, beside the trees.
+         */
+        Shape hugeDirs(int count, int size) {
+            hugeDirs = Math.max(0, count);
+            hugeDirSize = Math.max(0, size);
+            return this;
+        }
+
+        Shape skew(double skew) {
+            this.skew = Math.max(1.0, skew);
+            return this;
+        }
+
+    }
+
+}
@@ -1,16 +1,22 @@
 package com.file.search;
 
+import com.file.search.indexing.FileCrawler;
 import com.file.search.indexing.FileIndexer;
 import org.apache.commons.cli.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 import java.util.StringTokenizer;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * @author ahmad
@@ -22,9 +28,28 @@ public final class Application {
     private static final String OPT_A = "a";
     private static final String OPT_H = "h";
     private static final String OPT_I = "i";
+    private static final String OPT_U = "u";
+    private static final String OPT_GLOB = "glob";
+    private static final String OPT_REGEX = "regex";
+    private static final String OPT_FUZZY = "fuzzy";
+    private static final String OPT_EDITS = "edits";
+    private static final String OPT_LIMIT = "limit";
+    private static final String OPT_TYPE = "type";
+    private static final String OPT_SIZE = "size";
+    private static final String OPT_MTIME = "mtime";
     private static final String OPT_LOAD = "load";
     private static final String OPT_SAVE = "save";
+    private static final String OPT_REINDEX = "reindex";
+    private static final String OPT_PATTERNS = "patterns";
     private static final String OPT_HELP = "help";
+    private static final String OPT_POLL = "poll";
+    private static final String OPT_DAEMON = "daemon";
+    private static final String OPT_PORT = "port";
+
+    private static final String SIZE_UNITS = "bkmgt";
+    private static final long[] SIZE_UNIT_FACTORS = {1L, 1L << 10, 1L << 20, 1L << 30, 1L << 40};
+    private static final String AGE_UNITS = "smhd";
+    private static final long[] AGE_UNIT_FACTORS = {1000L, 60_000L, 3_600_000L, 86_400_000L};
 
     public static void main(String[] args) throws Exception {
 //        final Console console = System.console();
@@ -34,6 +59,47 @@ public final class Application {
 //        }
         Scanner console = new Scanner(System.in);
         final CommandLineParser parser = new DefaultParser();
+        final Options startupOptions = new Options();
+        startupOptions.addOption(OPT_POLL, "poll indexed directories for changes instead of watching them");
+        startupOptions.addOption(OPT_DAEMON, "serve queries on a loopback socket instead of reading them from the console");
+        startupOptions.addOption(OPT_PORT, true, "port to serve queries on, " + Daemon.DEFAULT_PORT + " by default");
+        final CommandLine startup = parser.parse(startupOptions, args);
+        final Options options = options();
+        final FileIndexer indexer = new FileIndexer(startup.hasOption(OPT_POLL) ? FileCrawler.Mode.POLL : FileCrawler.Mode.WATCH);
+        if (startup.hasOption(OPT_DAEMON)) {
+            final int port = startup.hasOption(OPT_PORT) ? Integer.parseInt(startup.getOptionValue(OPT_PORT).trim()) : Daemon.port();
+            new Daemon(indexer, options, port).serve();
+            System.exit(1);
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            System.out.print("> ");
+            String input = console.nextLine();
+            if (input == null) {
+                break;
+            }
+            CommandLine cli;
+            try {
+                cli = parser.parse(options, translateCommandline(input));
+            } catch (Throwable e) {
+                System.err.printf("%ninvalid command. (due to : %s)%n%n", e.getCause());
+                continue;
+            }
+            if (cli.hasOption(OPT_HELP)) {
+                final PrintWriter out = new PrintWriter(System.out, true);
+                out.println("\nOptions : \n");
+                printHelp(options, out);
+                continue;
+            }
+            final String error = execute(indexer, cli, null);
+            if (error != null) {
+                System.err.printf("%n%s%n%n", error);
+            }
+        }
+        console.close();
+        System.exit(0);
+    }
+
+    static Options options() {
         final Options options = new Options();
         final Option d = new Option(OPT_D, true, "base dir(s)");
         d.setArgs(Option.UNLIMITED_VALUES);
@@ -42,92 +108,268 @@ public final class Application {
         options.addOption(OPT_A, "append to output file");
         options.addOption(OPT_H, "include hidden files");
         options.addOption(OPT_I, "case insensitive search");
+        options.addOption(OPT_GLOB, "match whole names against <file_name> as a glob of *, ?, [...] and \\ escapes");
+        options.addOption(OPT_REGEX, "match names containing a match of <file_name> as a regular expression");
+        options.addOption(OPT_FUZZY, "match names within a few typos of <file_name>, closest first");
+        options.addOption(OPT_EDITS, true, "number of typos allowed with -fuzzy, by default 0 up to 2 characters, 1 up to 5 and 2 beyond");
+        options.addOption(OPT_U, "print results unsorted, as soon as they are found");
+        options.addOption(OPT_LIMIT, true, "maximum number of results");
+        options.addOption(OPT_TYPE, true, "only entries of type f (regular file), d (directory), l (symbolic link) or o (other)");
+        options.addOption(OPT_SIZE, true, "only entries with a size in <min>..<max> (either may be left out), in bytes or with a unit k, m, g or t");
+        options.addOption(OPT_MTIME, true, "only entries modified <min>..<max> ago (either may be left out), in seconds or with a unit s, m, h or d");
+        options.addOption(OPT_PATTERNS, true, "search for every name listed in a file, one per line, at once (-limit applies per name)");
         options.addOption(OPT_LOAD, "load index files");
         options.addOption(OPT_SAVE, "save index files");
+        final Option reindex = new Option(OPT_REINDEX, true, "crawl dir(s) again and update their part of the index at once");
+        reindex.setArgs(Option.UNLIMITED_VALUES);
+        options.addOption(reindex);
         options.addOption(OPT_HELP, "help");
-        final FileIndexer indexer = new FileIndexer();
+        return options;
+    }
+
+    /**
+     * Tells whether the values of {@code option} name files or directories.
+     */
+    static boolean takesPaths(Option option) {
+        switch (option.getOpt()) {
+            case OPT_D:
+            case OPT_O:
+            case OPT_PATTERNS:
+            case OPT_REINDEX:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Runs a command other than help, and returns why it is invalid, or {@code null} if it is not. Search results
+     * go to {@code listener}, or to the console if it is {@code null}; either way, the output file of the command
+     * takes precedence.
+     */
+    static String execute(FileIndexer indexer, CommandLine cli, SearchListener listener) throws IOException {
+        if (cli.hasOption(OPT_LOAD)) {
+            return indexer.loadFromDisk() ? null : "no index files found.";
+        }
+        if (cli.hasOption(OPT_SAVE)) {
+            indexer.saveToDisk();
+            return null;
+        }
+        if (cli.hasOption(OPT_REINDEX)) {
+            final List<Path> dirs = new ArrayList<>();
+            for (String value : cli.getOptionValues(OPT_REINDEX)) {
+                dirs.add(Paths.get(value.trim()).toAbsolutePath());
+            }
+            System.out.print("\nreindexing ... ");
+            indexer.reindex(dirs);
+            System.out.println("done.\n");
+            return null;
+        }
+        String[] arguments = cli.getArgs();
+        String p;
+        if (arguments == null || arguments.length == 0 || (p = arguments[0]) == null || p.isEmpty()) {
+            if (!cli.hasOption(OPT_SIZE) && !cli.hasOption(OPT_MTIME) && !cli.hasOption(OPT_PATTERNS)) {
+                return "invalid command. (due to : No Args)";
+            }
+            // a metadata range alone is a query too, matching any name.
+            p = "";
+        }
+        if (!cli.hasOption(OPT_D)) {
+            return "use option -d to specify base dir(s).";
+        }
         final List<Path> baseDirs = new ArrayList<>();
-        while (!Thread.currentThread().isInterrupted()) {
-            System.out.print("> ");
-            String input = console.nextLine();
-            if (input == null) {
-                break;
+        String[] values = cli.getOptionValues(OPT_D);
+        for (String value : values) {
+            Path path = Paths.get(value.trim()).toAbsolutePath();
+            if (Files.exists(path) && Files.isDirectory(path)) {
+                baseDirs.add(path);
             }
-            CommandLine cli;
+        }
+        if (baseDirs.isEmpty()) {
+            return "no valid directory found.";
+        }
+        int limit = FileSearch.NO_LIMIT;
+        if (cli.hasOption(OPT_LIMIT)) {
             try {
-                cli = parser.parse(options, translateCommandline(input));
-            } catch (Throwable e) {
-                System.err.printf("%ninvalid command. (due to : %s)%n%n", e.getCause());
-                continue;
+                limit = Integer.parseInt(cli.getOptionValue(OPT_LIMIT).trim());
+            } catch (NumberFormatException e) {
+                limit = -1;
             }
-            if (cli.hasOption(OPT_LOAD)) {
-                if (!indexer.loadFromDisk()) {
-                    System.err.println("\nno index files found.\n");
-                }
-                continue;
+            if (limit <= 0) {
+                return "invalid limit.";
             }
-            if (cli.hasOption(OPT_SAVE)) {
-                indexer.saveToDisk();
-                continue;
+        }
+        FileType type = null;
+        if (cli.hasOption(OPT_TYPE)) {
+            type = parseType(cli.getOptionValue(OPT_TYPE));
+            if (type == null) {
+                return "invalid type.";
             }
-            if (cli.hasOption(OPT_HELP)) {
-                printHelp(options);
-                continue;
+        }
+        long[] size = null;
+        if (cli.hasOption(OPT_SIZE)) {
+            size = parseRange(cli.getOptionValue(OPT_SIZE), SIZE_UNITS, SIZE_UNIT_FACTORS);
+            if (size == null) {
+                return "invalid size range.";
             }
-            String[] arguments = cli.getArgs();
-            String p;
-            if (arguments == null || arguments.length == 0 || (p = arguments[0]) == null || p.isEmpty()) {
-                System.err.println("\ninvalid command. (due to : No Args)\n");
-                continue;
+        }
+        long[] age = null;
+        if (cli.hasOption(OPT_MTIME)) {
+            age = parseRange(cli.getOptionValue(OPT_MTIME), AGE_UNITS, AGE_UNIT_FACTORS);
+            if (age == null) {
+                return "invalid mtime range.";
             }
-            if (!cli.hasOption(OPT_D)) {
-                System.err.println("\nuse option -d to specify base dir(s).\n");
-                continue;
+        }
+        NameMode nameMode = NameMode.LITERAL;
+        final int modes = (cli.hasOption(OPT_GLOB) ? 1 : 0) + (cli.hasOption(OPT_REGEX) ? 1 : 0) + (cli.hasOption(OPT_FUZZY) ? 1 : 0);
+        if (modes > 0) {
+            if (modes > 1 || cli.hasOption(OPT_PATTERNS)) {
+                return "-glob, -regex and -fuzzy can not be combined with each other or with -patterns.";
             }
-            String[] values = cli.getOptionValues(OPT_D);
-            for (String value : values) {
-                Path path = Paths.get(value.trim()).toAbsolutePath();
-                if (Files.exists(path) && Files.isDirectory(path)) {
-                    baseDirs.add(path);
-                }
+            nameMode = cli.hasOption(OPT_GLOB) ? NameMode.GLOB : cli.hasOption(OPT_REGEX) ? NameMode.REGEX : NameMode.FUZZY;
+        }
+        int edits = -1;
+        if (cli.hasOption(OPT_EDITS)) {
+            if (nameMode != NameMode.FUZZY) {
+                return "-edits only applies to -fuzzy.";
             }
-            if (baseDirs.isEmpty()) {
-                System.err.println("\nno valid directory found.\n");
-                continue;
+            try {
+                edits = Integer.parseInt(cli.getOptionValue(OPT_EDITS).trim());
+            } catch (NumberFormatException e) {
+                edits = -1;
             }
-            SearchListener listener;
-            if (cli.hasOption(OPT_O)) {
-                String f = cli.getOptionValue(OPT_O);
-                if (f == null || f.isEmpty()) {
-                    System.err.println("\nplease specify output file.\n");
-                    continue;
-                }
-                File outFile = new File(f);
-                if (outFile.isDirectory()) {
-                    System.err.println("\ninvalid output file.\n");
-                    continue;
-                }
-                Files.createDirectories(Paths.get(outFile.getParentFile().getAbsolutePath()));
-                listener = new DefaultSearchListener(outFile, cli.hasOption(OPT_A));
-            } else {
-                listener = new DefaultSearchListener();
+            if (edits < 0) {
+                return "invalid number of edits.";
+            }
+        }
+        List<String> patterns = null;
+        if (cli.hasOption(OPT_PATTERNS)) {
+            patterns = readPatterns(cli.getOptionValue(OPT_PATTERNS));
+            if (patterns == null) {
+                return "invalid patterns file.";
             }
-            final FileMatcher matcher = new DefaultFileMatcher();
-            matcher.setName(p);
-            matcher.setBaseDirectories(baseDirs);
-            if (cli.hasOption(OPT_H)) {
-                matcher.setHiddenFilesIncluded(true);
+        }
+        SearchListener l = listener;
+        if (cli.hasOption(OPT_O)) {
+            String f = cli.getOptionValue(OPT_O);
+            if (f == null || f.isEmpty()) {
+                return "please specify output file.";
             }
-            if (cli.hasOption(OPT_I)) {
-                matcher.setCaseInsensitive(true);
+            File outFile = new File(f);
+            if (outFile.isDirectory()) {
+                return "invalid output file.";
             }
+            Files.createDirectories(Paths.get(outFile.getAbsoluteFile().getParentFile().getAbsolutePath()));
+            l = new DefaultSearchListener(outFile, cli.hasOption(OPT_A));
+        } else if (l == null) {
+            l = new DefaultSearchListener();
+        }
+        final FileMatcher matcher = new DefaultFileMatcher();
+        matcher.setName(p);
+        if (edits >= 0) {
+            matcher.setMaxEdits(edits);
+        }
+        try {
+            matcher.setNameMode(nameMode);
+        } catch (PatternSyntaxException e) {
+            return "invalid regex. (due to : " + e.getDescription() + ")";
+        }
+        matcher.setBaseDirectories(baseDirs);
+        if (cli.hasOption(OPT_H)) {
+            matcher.setHiddenFilesIncluded(true);
+        }
+        if (cli.hasOption(OPT_I)) {
+            matcher.setCaseInsensitive(true);
+        }
+        matcher.setFileType(type);
+        if (size != null) {
+            matcher.setMinSize(size[0]);
+            matcher.setMaxSize(size[1]);
+        }
+        if (age != null) {
+            final long now = System.currentTimeMillis();
+            // the older an entry may be, the earlier it may have been modified.
+            matcher.setMinLastModified(age[1] == Long.MAX_VALUE ? Long.MIN_VALUE : now - age[1]);
+            matcher.setMaxLastModified(now - age[0]);
+        }
+        if (listener == null) {
             System.out.println();
-            FileSearch.search(indexer, matcher, listener, baseDirs);
+        }
+        if (patterns != null) {
+            FileSearch.search(indexer, patterns, matcher, l, baseDirs, limit);
+        } else {
+            FileSearch.search(indexer, matcher, l, baseDirs, limit, cli.hasOption(OPT_U));
+        }
+        if (listener == null) {
             System.out.println();
-            baseDirs.clear();
         }
-        console.close();
-        System.exit(0);
+        return null;
+    }
+
+    /**
+     * Reads the non-blank lines of a patterns file, trimmed, or returns {@code null} if it can not be read.
+     */
+    private static List<String> readPatterns(String file) {
+        if (file == null || file.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            final List<String> patterns = new ArrayList<>();
+            for (String line : Files.readAllLines(Paths.get(file.trim()), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    patterns.add(line.trim());
+                }
+            }
+            return patterns;
+        } catch (IOException | InvalidPathException e) {
+            return null;
+        }
+    }
+
+    private static FileType parseType(String type) {
+        switch (type == null ? "" : type.trim()) {
+            case "f":
+                return FileType.REGULAR;
+            case "d":
+                return FileType.DIRECTORY;
+            case "l":
+                return FileType.SYMBOLIC_LINK;
+            case "o":
+                return FileType.OTHER;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Parses {@code <min>..<max>}, or a single value for an exact match, into {@code {min, max}}. Each value is a
+     * number with an optional unit (one of {@code units}, defaulting to the first one); a left out bound is
+     * {@code 0} or {@link Long#MAX_VALUE}.
+     */
+    private static long[] parseRange(String range, String units, long[] factors) {
+        if (range == null) {
+            return null;
+        }
+        final String s = range.trim().toLowerCase();
+        final int dots = s.indexOf("..");
+        final long min = dots < 0 ? parseValue(s, units, factors) : dots == 0 ? 0L : parseValue(s.substring(0, dots), units, factors);
+        final long max = dots < 0 ? min : dots + 2 == s.length() ? Long.MAX_VALUE : parseValue(s.substring(dots + 2), units, factors);
+        return min < 0 || max < min ? null : new long[]{min, max};
+    }
+
+    private static long parseValue(String value, String units, long[] factors) {
+        final String s = value.trim();
+        if (s.isEmpty()) {
+            return -1L;
+        }
+        final int unit = units.indexOf(s.charAt(s.length() - 1));
+        try {
+            final long n = Long.parseLong(unit < 0 ? s : s.substring(0, s.length() - 1).trim());
+            final long factor = factors[Math.max(unit, 0)];
+            return n < 0 || n > Long.MAX_VALUE / factor ? -1L : n * factor;
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
     }
 
     public static String[] translateCommandline(String toProcess) {
@@ -187,12 +429,11 @@ public final class Application {
         return new String[0];
     }
 
-    private static void printHelp(Options options) {
-        System.out.println("\nOptions : \n");
+    static void printHelp(Options options, PrintWriter out) {
         for (Option o : options.getOptions()) {
-            System.out.printf("\t-%s\t%s%n", o.getOpt(), o.getDescription());
+            out.printf("\t-%s\t%s%n", o.getOpt(), o.getDescription());
         }
-        System.out.println("\n\t-examples\n\n\t\t<file_name> -d <base_dir(s)> -i\n\t\t<file_name> -d <base_dir(s)> -o <out_put> -h -a\n");
+        out.println("\n\t-examples\n\n\t\t<file_name> -d <base_dir(s)> -i\n\t\t<file_name> -d <base_dir(s)> -o <out_put> -h -a\n\t\t<file_name> -d <base_dir(s)> -limit <n> -u\n\t\t<file_name> -d <base_dir(s)> -type d\n\t\t\"\" -d <base_dir(s)> -type f -size 1g..\n\t\t<file_name> -d <base_dir(s)> -mtime ..1h\n\t\t\"*.log\" -d <base_dir(s)> -glob\n\t\t\"core\\.[0-9]+$\" -d <base_dir(s)> -regex\n\t\tcofnig.yaml -d <base_dir(s)> -fuzzy -limit 10\n\t\t-patterns <file> -d <base_dir(s)> -i\n\t\t-reindex <dir(s)>\n");
     }
 
 }
@@ -0,0 +1,182 @@
+package com.file.search;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Thin client of a {@link Daemon}. With arguments, it sends them as one command, prints the matching paths and
+ * exits with status {@code 1} if the command was invalid. Without arguments, it sends every line of the standard
+ * input as a command, and prints every answer followed by an empty line as soon as it arrives. Relative paths in
+ * commands are resolved against the working directory of the client, not the daemon's, before they are sent.
+ * <p>
+ * {@code java -cp ffs.jar com.file.search.Client <file_name> -d <base_dir(s)> -limit 10}
+ *
+ * @author ahmad
+ */
+public final class Client {
+
+    private Client() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        final int port = Daemon.port();
+        final String token;
+        final Socket socket;
+        try {
+            token = new String(Files.readAllBytes(Daemon.tokenFile(port)), UTF_8).trim();
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (IOException e) {
+            System.err.printf("no daemon on port %d. (due to : %s)%n", port, e.getMessage());
+            System.exit(2);
+            return;
+        }
+        socket.setTcpNoDelay(true);
+        final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8), 1 << 16);
+        final Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8));
+        final BufferedWriter stdout = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), UTF_8), 1 << 16);
+        boolean ok = true;
+        try {
+            out.write(token);
+            out.write('\n');
+            if (args.length > 0) {
+                out.write(encode(absolute(args)));
+                out.write('\n');
+                out.flush();
+                ok = answer(in, stdout);
+            } else {
+                final Thread sender = new Thread(() -> send(socket, out));
+                sender.setDaemon(true);
+                sender.start();
+                while (!eof(in)) {
+                    ok &= answer(in, stdout);
+                    stdout.write('\n');
+                    stdout.flush();
+                }
+            }
+            stdout.flush();
+        } finally {
+            socket.close();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Sends the lines of the standard input as they are read, then closes the sending half of the connection.
+     */
+    private static void send(Socket socket, Writer out) {
+        try (BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, UTF_8))) {
+            for (String line; (line = commands.readLine()) != null; ) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String command;
+                try {
+                    command = encode(absolute(Application.translateCommandline(line)));
+                } catch (IllegalStateException e) {
+                    // the daemon tells what is wrong with it.
+                    command = line;
+                }
+                out.write(command);
+                out.write('\n');
+                if (!commands.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+            socket.shutdownOutput();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean eof(BufferedReader in) throws IOException {
+        in.mark(1);
+        if (in.read() < 0) {
+            return true;
+        }
+        in.reset();
+        return false;
+    }
+
+    /**
+     * Copies one answer, up to the empty line ending it, and returns whether the command was valid.
+     */
+    private static boolean answer(BufferedReader in, Writer stdout) throws IOException {
+        boolean ok = true;
+        for (String line; (line = in.readLine()) != null && !line.isEmpty(); ) {
+            if (line.startsWith(Daemon.ERROR)) {
+                System.err.println(PlainSearchListener.unescape(line.substring(Daemon.ERROR.length())));
+                ok = false;
+            } else {
+                stdout.write(PlainSearchListener.unescape(line));
+                stdout.write('\n');
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Returns {@code args} with the values of the options naming files or directories made absolute. Arguments
+     * that do not parse are left as they are, for the daemon to tell what is wrong with them.
+     */
+    private static String[] absolute(String[] args) {
+        final CommandLine cli;
+        try {
+            cli = new DefaultParser().parse(Application.options(), args);
+        } catch (ParseException e) {
+            return args;
+        }
+        final List<String> resolved = new ArrayList<>(cli.getArgList());
+        for (Option o : cli.getOptions()) {
+            resolved.add("-" + o.getOpt());
+            final String[] values = o.getValues();
+            if (values == null) {
+                continue;
+            }
+            for (String value : values) {
+                if (Application.takesPaths(o) && !value.trim().isEmpty()) {
+                    try {
+                        value = Paths.get(value.trim()).toAbsolutePath().normalize().toString();
+                    } catch (InvalidPathException ignored) {
+                    }
+                }
+                resolved.add(value);
+            }
+        }
+        return resolved.toArray(new String[resolved.size()]);
+    }
+
+    /**
+     * Encodes arguments the way {@link Daemon#arguments(String)} decodes them, so that they arrive as they are
+     * whatever quotes, spaces or line breaks they hold.
+     */
+    private static String encode(String[] args) {
+        final StringBuilder sb = new StringBuilder();
+        for (String arg : args) {
+            sb.append(Daemon.ARGUMENT).append(PlainSearchListener.escape(arg));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.file.search;
+
+import com.file.search.indexing.FileIndexer;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keeps the index resident and serves queries over a loopback socket, so that a {@link Client} only pays for a
+ * connection instead of starting a JVM and loading the index.
+ * <p>
+ * The protocol is line based, in UTF-8. A client first sends the token the daemon wrote to its
+ * {@link #tokenFile(int) token file}, then commands, one per line, with absolute paths: either in the syntax of the
+ * console, or as their arguments, each after an {@link #ARGUMENT} and escaped, which takes no quoting whatever they
+ * hold. It may send any number of commands over one connection without waiting for the answers. For every command the
+ * daemon answers with the matching paths, one per line and without any headers, or with a single line starting with
+ * {@link #ERROR}; then an empty line. Lines are {@link PlainSearchListener#escape(String) escaped}, so that no name
+ * can break them. The paths of a {@code -patterns} command come in one run per pattern, each after a line of
+ * {@link PlainSearchListener#PATTERN} and the pattern. Every connection is served by a thread of its own, and
+ * queries do not block one another.
+ * <p>
+ * Commands run with the privileges of the daemon, output and patterns files included, so only those who can read
+ * the token file, which only its owner may, are served. Java 8 has no Unix-domain sockets whose peer could be told;
+ * the token stands in for that. A connection sending anything that looks like HTTP, such as a request a web page
+ * made a browser send to the port, is closed at once.
+ *
+ * @author ahmad
+ */
+public final class Daemon {
+
+    public static final int DEFAULT_PORT = 7380;
+
+    /**
+     * System property overriding {@link #DEFAULT_PORT}, for the daemon and the client alike.
+     */
+    public static final String PORT_PROPERTY = "ffs.port";
+
+    public static final String ERROR = "error: ";
+
+    /**
+     * Comes before every argument of a command sent as its arguments rather than as a command line.
+     */
+    public static final char ARGUMENT = '\0';
+
+    private static final int TOKEN_BYTES = 32;
+    private static final Pattern HTTP = Pattern.compile("^[A-Z]+ \\S+ HTTP/\\d");
+
+    private final FileIndexer indexer;
+    private final Options options;
+    private final int port;
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        final Thread t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    });
+
+    public Daemon(FileIndexer indexer, Options options, int port) {
+        this.indexer = indexer;
+        this.options = options;
+        this.port = port;
+    }
+
+    public static int port() {
+        return Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+    }
+
+    /**
+     * Returns the file holding the token of the daemon serving on {@code port}.
+     */
+    public static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".ffs", "daemon-" + port + ".token");
+    }
+
+    /**
+     * Accepts connections until the socket can not be opened or fails.
+     */
+    public void serve() {
+        final Path tokenFile = tokenFile(port);
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            // the token is only replaced once the port is ours, so that it is never one of another daemon.
+            final byte[] token = writeToken(tokenFile);
+            try {
+                System.out.printf("%nserving queries on %s%n%n", server.getLocalSocketAddress());
+                while (!Thread.currentThread().isInterrupted()) {
+                    final Socket socket = server.accept();
+                    connections.execute(() -> serve(socket, token));
+                }
+            } finally {
+                Files.deleteIfExists(tokenFile);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes a new random token to {@code file}, readable and writable by its owner only, and returns it.
+     */
+    private static byte[] writeToken(Path file) throws IOException {
+        final byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        final StringBuilder sb = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        Files.createDirectories(file.getParent());
+        // a token file left behind by another daemon may have been made readable by anyone.
+        Files.deleteIfExists(file);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(
+                    EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+        } else {
+            final File f = Files.createFile(file).toFile();
+            f.setReadable(false, false);
+            f.setWritable(false, false);
+            f.setReadable(true, true);
+            f.setWritable(true, true);
+        }
+        final byte[] token = sb.toString().getBytes(UTF_8);
+        Files.write(file, token);
+        return token;
+    }
+
+    /**
+     * Returns the arguments of a command, sent as a command line or as its arguments.
+     */
+    static String[] arguments(String line) {
+        if (line.isEmpty() || line.charAt(0) != ARGUMENT) {
+            return Application.translateCommandline(line);
+        }
+        final String[] args = line.substring(1).split(String.valueOf(ARGUMENT), -1);
+        for (int i = 0; i < args.length; i++) {
+            args[i] = PlainSearchListener.unescape(args[i]);
+        }
+        return args;
+    }
+
+    private void serve(Socket socket, byte[] token) {
+        final CommandLineParser parser = new DefaultParser();
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), UTF_8), 1 << 16)) {
+            s.setTcpNoDelay(true);
+            final String sent = in.readLine();
+            if (sent == null || !MessageDigest.isEqual(token, sent.trim().getBytes(UTF_8))) {
+                if (sent != null && !HTTP.matcher(sent).find()) {
+                    out.write(ERROR);
+                    out.write("not authorized.\n\n");
+                }
+                return;
+            }
+            final SearchListener listener = new PlainSearchListener(out);
+            for (String line; (line = in.readLine()) != null; ) {
+                if (HTTP.matcher(line).find()) {
+                    return;
+                }
+                String error;
+                try {
+                    final CommandLine cli = parser.parse(options, arguments(line));
+                    if (cli.hasOption("help")) {
+                        final StringWriter help = new StringWriter();
+                        Application.printHelp(options, new PrintWriter(help));
+                        out.write(PlainSearchListener.escape(help.toString()));
+                        out.write('\n');
+                        error = null;
+                    } else {
+                        error = Application.execute(indexer, cli, listener);
+                    }
+                } catch (Exception e) {
+                    error = "invalid command. (due to : " + e.getMessage() + ")";
+                }
+                if (error != null) {
+                    out.write(ERROR);
+                    out.write(PlainSearchListener.escape(error));
+                    out.write('\n');
+                }
+                out.write('\n');
+                // answers to pipelined commands go out together.
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException ignored) {
+            // the client went away.
+        }
+    }
+
+}
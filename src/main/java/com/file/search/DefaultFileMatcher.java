@@ -1,13 +1,17 @@
 package com.file.search;
 
+import com.file.search.util.CaseFolding;
+import com.file.search.util.Glob;
+import com.file.search.util.LevenshteinAutomaton;
+import com.file.search.util.PathTrie;
 import com.file.search.util.RegexUtils;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.StringJoiner;
 import java.util.regex.Pattern;
 
 /**
@@ -15,15 +19,23 @@ import java.util.regex.Pattern;
  */
 public final class DefaultFileMatcher implements FileMatcher {
 
-    private static final String PATTERN_FORMAT = "^(%s).*";
-    private static final String DIR_DELIMITER = "|";
-
     private String name;
+    private NameMode nameMode = NameMode.LITERAL;
     private Pattern namePattern;
+    private Glob nameGlob;
+    private String foldedName;
+    private LevenshteinAutomaton nameAutomaton;
+    private int maxEdits = -1;
+    private List<String> literals = Collections.emptyList();
     private List<Path> baseDirs;
-    private Pattern baseDirsPattern;
+    private PathTrie baseDirsTrie;
     private boolean hiddenFilesIncluded;
     private boolean caseInsensitive;
+    private FileType fileType;
+    private long minSize = Long.MIN_VALUE;
+    private long maxSize = Long.MAX_VALUE;
+    private long minLastModified = Long.MIN_VALUE;
+    private long maxLastModified = Long.MAX_VALUE;
 
     private static boolean isHidden(Path path) {
         try {
@@ -42,7 +54,69 @@ public final class DefaultFileMatcher implements FileMatcher {
     public void setName(String name) {
         Objects.requireNonNull(name);
         this.name = name;
-        namePattern = Pattern.compile(RegexUtils.escape(name), Pattern.CASE_INSENSITIVE);
+        compile();
+    }
+
+    @Override
+    public NameMode getNameMode() {
+        return nameMode;
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if the name is not a valid regular expression in
+     *                                                {@link NameMode#REGEX}.
+     */
+    @Override
+    public void setNameMode(NameMode nameMode) {
+        this.nameMode = Objects.requireNonNull(nameMode);
+        compile();
+    }
+
+    @Override
+    public int getMaxEdits() {
+        return maxEdits >= 0 || name == null ? maxEdits : LevenshteinAutomaton.defaultMaxEdits(name);
+    }
+
+    @Override
+    public void setMaxEdits(int maxEdits) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("negative maximum number of edits : " + maxEdits);
+        }
+        this.maxEdits = maxEdits;
+        compile();
+    }
+
+    @Override
+    public List<String> getRequiredLiterals() {
+        return literals;
+    }
+
+    private void compile() {
+        namePattern = null;
+        nameGlob = null;
+        nameAutomaton = null;
+        foldedName = null;
+        if (name == null) {
+            literals = Collections.emptyList();
+            return;
+        }
+        switch (nameMode) {
+            case GLOB:
+                nameGlob = new Glob(name, caseInsensitive);
+                literals = nameGlob.literals();
+                break;
+            case REGEX:
+                namePattern = Pattern.compile(name, caseInsensitive ? Pattern.CASE_INSENSITIVE : 0);
+                literals = RegexUtils.requiredLiterals(name);
+                break;
+            case FUZZY:
+                nameAutomaton = new LevenshteinAutomaton(name, getMaxEdits(), caseInsensitive);
+                literals = Collections.emptyList();
+                break;
+            default:
+                foldedName = caseInsensitive ? CaseFolding.fold(name) : null;
+                literals = Collections.singletonList(name);
+        }
     }
 
     @Override
@@ -63,6 +137,7 @@ public final class DefaultFileMatcher implements FileMatcher {
     @Override
     public void setCaseInsensitive(boolean caseInsensitive) {
         this.caseInsensitive = caseInsensitive;
+        compile();
     }
 
     @Override
@@ -73,22 +148,100 @@ public final class DefaultFileMatcher implements FileMatcher {
     @Override
     public void setBaseDirectories(List<Path> baseDirectories) {
         baseDirs = baseDirectories;
-        final StringJoiner joiner = new StringJoiner(DIR_DELIMITER);
-        for (Path dir : baseDirs) {
-            joiner.add(RegexUtils.escape(dir.toString()));
-        }
-        baseDirsPattern = Pattern.compile(String.format(PATTERN_FORMAT, joiner), Pattern.CASE_INSENSITIVE);
+        baseDirsTrie = new PathTrie(baseDirectories);
+    }
+
+    @Override
+    public FileType getFileType() {
+        return fileType;
+    }
+
+    @Override
+    public void setFileType(FileType fileType) {
+        this.fileType = fileType;
+    }
+
+    @Override
+    public long getMinSize() {
+        return minSize;
+    }
+
+    @Override
+    public void setMinSize(long minSize) {
+        this.minSize = minSize;
+    }
+
+    @Override
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public long getMinLastModified() {
+        return minLastModified;
+    }
+
+    @Override
+    public void setMinLastModified(long minLastModified) {
+        this.minLastModified = minLastModified;
+    }
+
+    @Override
+    public long getMaxLastModified() {
+        return maxLastModified;
+    }
+
+    @Override
+    public void setMaxLastModified(long maxLastModified) {
+        this.maxLastModified = maxLastModified;
     }
 
     @Override
     public boolean matchFileName(String fileName) {
-        return caseInsensitive ? namePattern.matcher(fileName).find() : fileName.contains(name);
+        if (nameMode == NameMode.LITERAL) {
+            // regardless of case is regardless of normalization too; see CaseFolding.
+            return caseInsensitive ? CaseFolding.fold(fileName).contains(foldedName) : fileName.contains(name);
+        }
+        if (nameAutomaton != null) {
+            return nameAutomaton.distance(fileName) <= nameAutomaton.maxEdits();
+        }
+        for (String literal : literals) {
+            if (!contains(fileName, literal)) {
+                return false;
+            }
+        }
+        return nameGlob != null ? nameGlob.matches(fileName) : namePattern.matcher(fileName).find();
+    }
+
+    /**
+     * Tells whether {@code fileName} contains {@code literal}, regardless of case if the match is case
+     * insensitive; this is a cheap test ahead of the glob or regex, so it may pass more names than they do.
+     */
+    private boolean contains(String fileName, String literal) {
+        if (!caseInsensitive) {
+            return fileName.contains(literal);
+        }
+        for (int i = 0, last = fileName.length() - literal.length(); i <= last; i++) {
+            if (fileName.regionMatches(true, i, literal, 0, literal.length())) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public boolean matchDirectory(Path path) {
-        return (hiddenFilesIncluded || !isHidden(path))
-                && baseDirsPattern.matcher(path.toString()).matches();
+        return baseDirsTrie.matches(path) && (hiddenFilesIncluded || !isHidden(path));
+    }
+
+    @Override
+    public boolean matchDirectory(Path path, boolean hidden) {
+        return (hiddenFilesIncluded || !hidden) && baseDirsTrie.matches(path);
     }
 
 }
@@ -59,6 +59,17 @@ public final class DefaultSearchListener implements SearchListener {
         }
     }
 
+    @Override
+    public void onPattern(String pattern) {
+        try {
+            writer.write(String.format("%n == results for '%s'%n", pattern));
+            if (console) {
+                writer.flush();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
     @Override
     public void onStart(long when, String pattern) {
         start.set(when);
@@ -0,0 +1,340 @@
+package com.file.search;
+
+import com.file.search.util.PathTrie;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The storage devices the file system is mounted from, and where each one is mounted. Every device is walked by
+ * workers of its own and polled as often as suits it, so that a slow device, e.g. a network mount, does not hold
+ * up the others: a solid state disk takes as many workers as there are cores, a spinning disk only
+ * {@link SearchProcess#DEFAULT_PARALLELISM}, and a network mount is polled less often and never watched, as
+ * changes made on other hosts are not reported anyway.
+ * <p>
+ * The number of workers and the poll interval of every {@link Kind} of device can be set with the system
+ * properties {@code ffs.workers.<kind>} and {@code ffs.poll.<kind>}, e.g. {@code -Dffs.workers.rotational=1} and
+ * {@code -Dffs.poll.network=12}; the poll interval is a multiple of the update interval of the crawler. Whether
+ * a walk goes on into a file system mounted below the one it is on is set by {@link #CROSSING_PROPERTY}.
+ * <p>
+ * Mounts are read from the mount table where there is one, otherwise every root directory is taken to be a device
+ * of its own, as told by its {@link FileStore}. Immutable; mounts made later are only seen by a table loaded
+ * later.
+ *
+ * @author ahmad
+ */
+public final class Devices {
+
+    /**
+     * System property naming the {@link Crossing} policy, {@code local} by default.
+     */
+    public static final String CROSSING_PROPERTY = "ffs.mounts";
+
+    public static final String WORKERS_PROPERTY_PREFIX = "ffs.workers.";
+    public static final String POLL_PROPERTY_PREFIX = "ffs.poll.";
+
+    public enum Crossing {
+        /**
+         * go on into every file system.
+         */
+        ALL,
+        /**
+         * go on into every file system but network mounts, which are only walked when given as a directory to
+         * walk.
+         */
+        LOCAL,
+        /**
+         * stay on the file systems of the directories given, like {@code find -xdev}.
+         */
+        NONE
+    }
+
+    public enum Kind {
+        SOLID_STATE, ROTATIONAL, NETWORK, MEMORY, OTHER
+    }
+
+    private static final Path MOUNTS = Paths.get("/proc/self/mounts");
+    private static final Path BLOCK_DEVICES = Paths.get("/sys/class/block");
+
+    private static final Set<String> NETWORK_TYPES = new HashSet<>(Arrays.asList(
+            "nfs", "nfs4", "cifs", "smb3", "smbfs", "ncpfs", "afs", "9p", "ceph", "glusterfs", "lustre", "gpfs",
+            "davfs", "fuse.sshfs", "fuse.rclone", "fuse.s3fs", "fuse.gcsfuse", "fuse.glusterfs", "fuse.ceph"
+    ));
+    private static final Set<String> MEMORY_TYPES = new HashSet<>(Arrays.asList("tmpfs", "ramfs"));
+
+    private final Crossing crossing;
+
+    /**
+     * The devices of {@link #mountTrie}, by the index of their mount point.
+     */
+    private final List<Device> mounted;
+    private final PathTrie mountTrie;
+    private final Map<Path, Device> byMountPoint = new HashMap<>();
+    private final Device unknown;
+
+    private Devices(Crossing crossing, List<Path> mountPoints, List<Device> mounted) {
+        this.crossing = crossing;
+        this.mounted = mounted;
+        this.mountTrie = new PathTrie(mountPoints);
+        for (int i = 0; i < mountPoints.size(); i++) {
+            byMountPoint.putIfAbsent(mountPoints.get(i), mounted.get(i));
+        }
+        unknown = new Device("unknown", "unknown", Kind.OTHER);
+    }
+
+    /**
+     * Reads the mount table, or the file stores of the root directories if there is none.
+     */
+    public static Devices load() {
+        final Crossing crossing = crossing();
+        final List<Path> mountPoints = new ArrayList<>();
+        final List<Device> mounted = new ArrayList<>();
+        final List<String[]> table = mountTable();
+        if (!table.isEmpty()) {
+            final Map<String, Device> devices = new HashMap<>();
+            for (String[] mount : table) {
+                try {
+                    final Path mountPoint = Paths.get(mount[1]);
+                    final String source = mount[0];
+                    final String type = mount[2];
+                    mounted.add(devices.computeIfAbsent(type + ' ' + source,
+                            key -> new Device(source, type, kind(source, type))));
+                    mountPoints.add(mountPoint);
+                } catch (InvalidPathException ignored) {
+                }
+            }
+        } else {
+            for (Path root : FileSystems.getDefault().getRootDirectories()) {
+                try {
+                    final FileStore store = Files.getFileStore(root);
+                    mounted.add(new Device(store.name(), store.type(), kind("", store.type())));
+                    mountPoints.add(root);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        // deepest first, so that the first mount point holding a path is the one it is on, and the last mount on
+        // a mount point first, as it hides the ones before.
+        final Integer[] order = new Integer[mountPoints.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> -mountPoints.get(i).getNameCount())
+                .thenComparing(Comparator.reverseOrder()));
+        final List<Path> sortedMountPoints = new ArrayList<>(order.length);
+        final List<Device> sortedMounted = new ArrayList<>(order.length);
+        for (int i : order) {
+            sortedMountPoints.add(mountPoints.get(i));
+            sortedMounted.add(mounted.get(i));
+        }
+        return new Devices(crossing, sortedMountPoints, sortedMounted);
+    }
+
+    private static Crossing crossing() {
+        final String configured = System.getProperty(CROSSING_PROPERTY);
+        if (configured != null) {
+            try {
+                return Crossing.valueOf(configured.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.err.println("unknown " + CROSSING_PROPERTY + " : " + configured);
+            }
+        }
+        return Crossing.LOCAL;
+    }
+
+    /**
+     * Returns the entries of the mount table as their source, mount point and file system type, in the order they
+     * were mounted; none if there is no mount table.
+     */
+    static List<String[]> mountTable() {
+        final List<String[]> mounts = new ArrayList<>();
+        if (!Files.isReadable(MOUNTS)) {
+            return mounts;
+        }
+        try {
+            for (String line : Files.readAllLines(MOUNTS, UTF_8)) {
+                // <device> <mount point> <type> <options> <dump> <pass>
+                final String[] fields = line.split(" ");
+                if (fields.length >= 3) {
+                    mounts.add(new String[]{unescape(fields[0]), unescape(fields[1]), fields[2]});
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return mounts;
+    }
+
+    /**
+     * Decodes the octal escapes ({@code \040} for a space and so on) of a mount table field.
+     */
+    private static String unescape(String field) {
+        final StringBuilder sb = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            final char c = field.charAt(i);
+            if (c == '\\' && i + 3 < field.length()) {
+                try {
+                    sb.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                    i += 3;
+                    continue;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static Kind kind(String source, String type) {
+        final String t = type.toLowerCase(Locale.ROOT);
+        if (NETWORK_TYPES.contains(t)) {
+            return Kind.NETWORK;
+        }
+        if (MEMORY_TYPES.contains(t)) {
+            return Kind.MEMORY;
+        }
+        if (!source.startsWith("/dev/")) {
+            return Kind.OTHER;
+        }
+        try {
+            // e.g. /dev/mapper/root is a link to /dev/dm-0.
+            final Path block = BLOCK_DEVICES.resolve(Paths.get(source).toRealPath().getFileName().toString());
+            Path rotational = block.resolve("queue").resolve("rotational");
+            if (!Files.exists(rotational)) {
+                // a partition, whose queue is the one of the disk it is on.
+                rotational = block.toRealPath().getParent().resolve("queue").resolve("rotational");
+            }
+            final String value = new String(Files.readAllBytes(rotational), US_ASCII).trim();
+            return value.equals("0") ? Kind.SOLID_STATE : Kind.ROTATIONAL;
+        } catch (IOException | InvalidPathException e) {
+            return Kind.OTHER;
+        }
+    }
+
+    public Crossing getCrossing() {
+        return crossing;
+    }
+
+    /**
+     * Returns the device {@code path} is on.
+     */
+    public Device deviceOf(Path path) {
+        final int mount = mountTrie.firstMatch(path);
+        return mount < 0 ? unknown : mounted.get(mount);
+    }
+
+    /**
+     * Returns the device mounted at {@code dir}, or {@code null} if it is not a mount point.
+     */
+    public Device mountedAt(Path dir) {
+        return byMountPoint.get(dir);
+    }
+
+    /**
+     * Tells whether a walk on {@code from} goes on into {@code to}, mounted below it.
+     */
+    public boolean crosses(Device from, Device to) {
+        return from == to || crossing == Crossing.ALL || crossing == Crossing.LOCAL && to.kind != Kind.NETWORK;
+    }
+
+    /**
+     * Tells whether a walk goes on into directory {@code dir} from its parent, as it is not a mount point or the
+     * file system mounted there is crossed into.
+     */
+    public boolean crossesInto(Path dir) {
+        final Device to = mountedAt(dir);
+        final Path parent = dir.getParent();
+        return to == null || parent == null || crosses(deviceOf(parent), to);
+    }
+
+    public static final class Device {
+
+        private final String name;
+        private final String type;
+        private final Kind kind;
+        private final int workers;
+        private final int pollFactor;
+
+        private Device(String name, String type, Kind kind) {
+            this.name = name;
+            this.type = type;
+            this.kind = kind;
+            final String key = kind.name().toLowerCase(Locale.ROOT);
+            workers = Math.max(1, Integer.getInteger(WORKERS_PROPERTY_PREFIX + key, defaultWorkers(kind)));
+            pollFactor = Math.max(1, Integer.getInteger(POLL_PROPERTY_PREFIX + key, kind == Kind.NETWORK ? 6 : 1));
+        }
+
+        private static int defaultWorkers(Kind kind) {
+            final int cores = Runtime.getRuntime().availableProcessors();
+            switch (kind) {
+                case SOLID_STATE:
+                    // deep queues; walking is mostly waiting, so a few more workers than cores still pay off.
+                    return Math.max(4, cores);
+                case ROTATIONAL:
+                    // every worker more is a seek more.
+                    return SearchProcess.DEFAULT_PARALLELISM;
+                case MEMORY:
+                    return Math.max(SearchProcess.DEFAULT_PARALLELISM, cores);
+                default:
+                    return 4;
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the number of workers walking this device at once.
+         */
+        public int getWorkers() {
+            return workers;
+        }
+
+        /**
+         * @return how many update intervals of the crawler pass between two polls of a directory on this device.
+         */
+        public int getPollFactor() {
+            return pollFactor;
+        }
+
+        /**
+         * @return whether changes on this device are reported to a {@link java.nio.file.WatchService}.
+         */
+        public boolean isWatchable() {
+            return kind != Kind.NETWORK;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + type + ", " + kind.name().toLowerCase(Locale.ROOT) + ')';
+        }
+
+    }
+
+}
@@ -0,0 +1,327 @@
+package com.file.search;
+
+import com.file.search.util.Glob;
+import com.file.search.util.PathTrie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Entries that are neither indexed nor crawled, nor is anything below them. Rules are written one per line, in
+ * the spirit of a {@code .gitignore}:
+ * <ul>
+ * <li>{@code /some/dir} excludes that path and everything below it,</li>
+ * <li>{@code fs:<type>} excludes every mount point of a file system of that type, e.g. {@code fs:proc}, as
+ * listed by the mount table when the rules are loaded,</li>
+ * <li>a rule without a {@code /} but a trailing one is a {@link Glob} matched against the whole name of every
+ * entry, e.g. {@code *.tmp},</li>
+ * <li>a rule with a {@code /} in it is a glob of the path, one {@link Glob} per path element, where {@code **}
+ * stands for any number of directories; it is matched against the last elements of every path, e.g.
+ * {@code build/*.o} or {@code .git/**}, or against the whole path if it starts with a {@code /}, e.g.
+ * {@code /home/*}{@code /.cache},</li>
+ * <li>a glob with a trailing {@code /}, e.g. {@code node_modules/}, only applies to directories,</li>
+ * <li>a rule starting with {@code !} includes again what an earlier rule excluded; the last rule that applies to an
+ * entry decides. As with git, an entry can not be included again if a directory above it is excluded, since
+ * nothing below that is ever looked at. {@code \!} and {@code \#} start a glob with a {@code !} or {@code #},</li>
+ * <li>blank lines and lines starting with {@code #} are ignored.</li>
+ * </ul>
+ * Everything but the rules for directories only is decided from the path alone, so that an excluded entry is
+ * dropped before its attributes are read. Rules that can not be read are reported and ignored.
+ *
+ * @author ahmad
+ */
+public final class ExclusionRules {
+
+    /**
+     * System property naming the rules file, {@code ~/.ffs/exclude} by default. If the file does not exist,
+     * {@link #DEFAULT_RULES} apply.
+     */
+    public static final String FILE_PROPERTY = "ffs.exclude";
+
+    /**
+     * Pseudo and virtual file systems, container image layers and {@code node_modules} trees.
+     */
+    public static final List<String> DEFAULT_RULES = Collections.unmodifiableList(Arrays.asList(
+            "/proc", "/sys", "/dev",
+            "fs:proc", "fs:sysfs", "fs:devtmpfs", "fs:devpts", "fs:cgroup", "fs:cgroup2", "fs:debugfs", "fs:tracefs",
+            "fs:securityfs", "fs:pstore", "fs:bpf", "fs:mqueue", "fs:hugetlbfs", "fs:configfs", "fs:fusectl",
+            "fs:binfmt_misc", "fs:autofs", "fs:nsfs", "fs:efivarfs", "fs:rpc_pipefs", "fs:selinuxfs",
+            "/var/lib/docker/overlay2", "/var/lib/containers/storage/overlay",
+            "node_modules/"
+    ));
+
+    public static final ExclusionRules NONE = new ExclusionRules(Collections.emptyList());
+
+    private static final String FS_PREFIX = "fs:";
+    private static final String DOUBLE_STAR = "**";
+
+    /**
+     * Every rule, in the order written.
+     */
+    private final List<Rule> rules;
+    /**
+     * With no rule to include anything again, whether anything is excluded does not depend on the order: paths
+     * and the trees below them are looked up at once in {@link #prefixTrie}, and {@link #globs} are only tried
+     * after.
+     */
+    private final boolean ordered;
+    private final PathTrie prefixTrie;
+    private final boolean hasPrefixes;
+    private final List<Rule> globs = new ArrayList<>();
+    private final boolean excludesFiles;
+
+    private ExclusionRules(List<Rule> rules) {
+        this.rules = rules;
+        final List<Path> prefixes = new ArrayList<>();
+        boolean ordered = false;
+        boolean excludesFiles = false;
+        for (Rule r : rules) {
+            ordered |= r.negated;
+            if (r.prefix != null) {
+                prefixes.add(r.prefix);
+            } else {
+                globs.add(r);
+                excludesFiles |= !r.negated && !r.dirOnly;
+            }
+        }
+        this.ordered = ordered;
+        this.excludesFiles = excludesFiles;
+        this.prefixTrie = new PathTrie(prefixes);
+        this.hasPrefixes = !prefixes.isEmpty();
+    }
+
+    /**
+     * Reads the rules file, or takes {@link #DEFAULT_RULES} if there is none or it can not be read.
+     */
+    public static ExclusionRules load() {
+        final String configured = System.getProperty(FILE_PROPERTY);
+        final Path file = Paths.get(configured != null ? configured
+                : System.getProperty("user.home") + File.separator + ".ffs" + File.separator + "exclude");
+        if (Files.isRegularFile(file)) {
+            try {
+                return of(Files.readAllLines(file, UTF_8));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return of(DEFAULT_RULES);
+    }
+
+    /**
+     * Parses {@code rules}; file system types are looked up in the mount table now. A rule that is not an
+     * absolute path is a glob. Rules that can not be read are reported on the standard error and left out.
+     */
+    public static ExclusionRules of(List<String> rules) {
+        final List<Rule> parsed = new ArrayList<>();
+        for (String line : rules) {
+            try {
+                parse(line.trim(), parsed);
+            } catch (IllegalArgumentException e) {
+                System.err.printf("exclusion rule '%s' ignored. (due to : %s)%n", line.trim(), e.getMessage());
+            }
+        }
+        return new ExclusionRules(parsed);
+    }
+
+    private static void parse(String line, List<Rule> rules) {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        final boolean negated = line.startsWith("!");
+        String rule = negated ? line.substring(1).trim() : line;
+        if (rule.isEmpty()) {
+            throw new IllegalArgumentException("nothing to include");
+        }
+        if (rule.startsWith(FS_PREFIX)) {
+            if (negated) {
+                throw new IllegalArgumentException("file systems can only be excluded");
+            }
+            for (Path mountPoint : mountPoints(rule.substring(FS_PREFIX.length()).trim())) {
+                rules.add(new Rule(mountPoint, false));
+            }
+            return;
+        }
+        final boolean dirOnly = rule.endsWith("/");
+        if (!isGlob(rule)) {
+            try {
+                final Path path = Paths.get(rule);
+                if (path.isAbsolute()) {
+                    rules.add(new Rule(path.normalize(), negated));
+                    return;
+                }
+            } catch (InvalidPathException ignored) {
+                // a glob, e.g. with a * on windows.
+            }
+        }
+        final boolean anchored = rule.startsWith("/");
+        rule = rule.substring(anchored ? 1 : 0, rule.length() - (dirOnly ? 1 : 0));
+        if (rule.isEmpty()) {
+            throw new IllegalArgumentException("no name or path to match");
+        }
+        final List<String> segments = new ArrayList<>(Arrays.asList(rule.split("/+")));
+        if (!anchored && !DOUBLE_STAR.equals(segments.get(0))) {
+            // matched against the last elements of a path, wherever they are.
+            segments.add(0, DOUBLE_STAR);
+        }
+        if (DOUBLE_STAR.equals(segments.get(segments.size() - 1))) {
+            // what is below, not the directory itself.
+            segments.add("*");
+        }
+        final Glob[] globs = new Glob[segments.size()];
+        for (int i = 0; i < globs.length; i++) {
+            final String segment = segments.get(i);
+            globs[i] = DOUBLE_STAR.equals(segment) ? null : new Glob(segment, false);
+        }
+        rules.add(new Rule(globs, dirOnly, negated));
+    }
+
+    private static boolean isGlob(String rule) {
+        // a \ only escapes where it does not separate names.
+        return rule.indexOf('*') >= 0 || rule.indexOf('?') >= 0 || rule.indexOf('[') >= 0
+                || (rule.indexOf('\\') >= 0 && File.separatorChar != '\\');
+    }
+
+    /**
+     * Returns the mount points of the file systems of {@code type}, or none if there is no mount table.
+     */
+    private static List<Path> mountPoints(String type) {
+        final List<Path> mountPoints = new ArrayList<>();
+        for (String[] mount : Devices.mountTable()) {
+            if (type.equals(mount[2])) {
+                try {
+                    mountPoints.add(Paths.get(mount[1]));
+                } catch (InvalidPathException ignored) {
+                }
+            }
+        }
+        return mountPoints;
+    }
+
+    /**
+     * Tells whether {@code path} is excluded whatever its type; entries this is {@code false} for may still be
+     * excluded as directories by {@link #excludes(Path, BasicFileAttributes)}.
+     */
+    public boolean excludes(Path path) {
+        return excludes(path, false, false);
+    }
+
+    /**
+     * Tells whether {@code path}, whose attributes are known, is excluded.
+     */
+    public boolean excludes(Path path, BasicFileAttributes attributes) {
+        return excludes(path, true, attributes.isDirectory());
+    }
+
+    /**
+     * Tells whether {@code path}, known to be a directory or not, is excluded.
+     */
+    public boolean excludes(Path path, boolean directory) {
+        return excludes(path, true, directory);
+    }
+
+    /**
+     * Tells whether any file may be excluded in a directory that is not, that is whether a glob for more than
+     * directories excludes anything; a path written out in full is only looked for where a directory could be.
+     */
+    public boolean excludesFiles() {
+        return excludesFiles;
+    }
+
+    private boolean excludes(Path path, boolean typeKnown, boolean directory) {
+        if (!ordered) {
+            if (hasPrefixes && prefixTrie.matches(path)) {
+                return true;
+            }
+            for (Rule r : globs) {
+                if ((!r.dirOnly || directory) && r.matches(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            final Rule r = rules.get(i);
+            if (r.dirOnly && typeKnown && !directory || !r.matches(path)) {
+                continue;
+            }
+            if (r.dirOnly && !typeKnown) {
+                // decided once the type is known.
+                return false;
+            }
+            return !r.negated;
+        }
+        return false;
+    }
+
+    /**
+     * A path and everything below it, or a glob of a path, one {@link Glob} per element and {@code null} for
+     * {@code **}.
+     */
+    private static final class Rule {
+
+        private final Path prefix;
+        private final Glob[] globs;
+        private final boolean dirOnly;
+        private final boolean negated;
+
+        private Rule(Path prefix, boolean negated) {
+            this.prefix = prefix;
+            this.globs = null;
+            this.dirOnly = false;
+            this.negated = negated;
+        }
+
+        private Rule(Glob[] globs, boolean dirOnly, boolean negated) {
+            this.prefix = null;
+            this.globs = globs;
+            this.dirOnly = dirOnly;
+            this.negated = negated;
+        }
+
+        private boolean matches(Path path) {
+            if (prefix != null) {
+                return path.startsWith(prefix);
+            }
+            final int n = path.getNameCount();
+            if (globs.length == 2 && globs[0] == null) {
+                // just a name, as most rules are.
+                return n > 0 && globs[1].matches(path.getName(n - 1).toString());
+            }
+            final String[] names = new String[n];
+            for (int i = 0; i < n; i++) {
+                names[i] = path.getName(i).toString();
+            }
+            return matches(0, names, 0);
+        }
+
+        private boolean matches(int g, String[] names, int i) {
+            for (; g < globs.length; g++, i++) {
+                if (globs[g] == null) {
+                    for (int k = names.length; k >= i; k--) {
+                        if (matches(g + 1, names, k)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (i == names.length || !globs[g].matches(names[i])) {
+                    return false;
+                }
+            }
+            return i == names.length;
+        }
+
+    }
+
+}
@@ -12,6 +12,27 @@ public interface FileMatcher {
 
     void setName(String name);
 
+    /**
+     * @return how the name is matched, {@link NameMode#LITERAL} by default.
+     */
+    NameMode getNameMode();
+
+    void setNameMode(NameMode nameMode);
+
+    /**
+     * @return the number of edits a name may be off by in {@link NameMode#FUZZY}; unless set, as many as
+     * {@link com.file.search.util.LevenshteinAutomaton#defaultMaxEdits(String)} allows for the name.
+     */
+    int getMaxEdits();
+
+    void setMaxEdits(int maxEdits);
+
+    /**
+     * @return substrings that every matching file name contains, in the case they were written in; the index
+     * looks these up before matching names one by one. Empty if none are known.
+     */
+    List<String> getRequiredLiterals();
+
     boolean isHiddenFilesIncluded();
 
     void setHiddenFilesIncluded(boolean hiddenFilesIncluded);
@@ -24,8 +45,58 @@ public interface FileMatcher {
 
     void setBaseDirectories(List<Path> baseDirectories);
 
+    /**
+     * @return the type of the entries to match, or {@code null} for any type.
+     */
+    FileType getFileType();
+
+    void setFileType(FileType fileType);
+
+    /**
+     * @return the smallest size in bytes of the entries to match, {@link Long#MIN_VALUE} for no lower bound.
+     */
+    long getMinSize();
+
+    void setMinSize(long minSize);
+
+    /**
+     * @return the largest size in bytes of the entries to match, {@link Long#MAX_VALUE} for no upper bound.
+     */
+    long getMaxSize();
+
+    void setMaxSize(long maxSize);
+
+    /**
+     * @return the earliest modification time (millis since the epoch) of the entries to match,
+     * {@link Long#MIN_VALUE} for no lower bound.
+     */
+    long getMinLastModified();
+
+    void setMinLastModified(long minLastModified);
+
+    /**
+     * @return the latest modification time (millis since the epoch) of the entries to match,
+     * {@link Long#MAX_VALUE} for no upper bound.
+     */
+    long getMaxLastModified();
+
+    void setMaxLastModified(long maxLastModified);
+
+    default boolean hasSizeRange() {
+        return getMinSize() != Long.MIN_VALUE || getMaxSize() != Long.MAX_VALUE;
+    }
+
+    default boolean hasLastModifiedRange() {
+        return getMinLastModified() != Long.MIN_VALUE || getMaxLastModified() != Long.MAX_VALUE;
+    }
+
     boolean matchFileName(String fileName);
 
     boolean matchDirectory(Path path);
 
+    /**
+     * Same as {@link #matchDirectory(Path)}, with the hidden attribute of {@code path} already known.
+     */
+    boolean matchDirectory(Path path, boolean hidden);
+
 }
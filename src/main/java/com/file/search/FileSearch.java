@@ -1,39 +1,97 @@
 package com.file.search;
 
 import com.file.search.indexing.FileIndexer;
-import com.file.search.util.RegexUtils;
+import com.file.search.util.PathTrie;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * @author ahmad
  */
 public final class FileSearch {
 
-    private static final String PATTERN_FORMAT = "^%s.*";
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
 
     private FileSearch() {
     }
 
     public static void search(final FileIndexer indexer, final FileMatcher matcher, final SearchListener listener, final List<Path> baseDirs) {
+        search(indexer, matcher, listener, baseDirs, NO_LIMIT, false);
+    }
+
+    /**
+     * @param limit     maximum number of results, {@link #NO_LIMIT} for all of them.
+     * @param streaming pass results to the listener as soon as they are found, unsorted, instead of sorted
+     *                  and grouped by base directory once the query completes.
+     */
+    public static void search(final FileIndexer indexer, final FileMatcher matcher, final SearchListener listener,
+                              final List<Path> baseDirs, final int limit, final boolean streaming) {
         listener.onStart(System.currentTimeMillis(), matcher.getName());
-        final List<Path> results = indexer.find(matcher);
-        baseDirs.stream().map(Path::toString).forEach(dir -> {
-            listener.onChangeDirectory(dir);
-            final Pattern dirPattern = getDirPattern(dir);
-            results.stream()
-                    .map(Path::toString)
-                    .filter(path -> dirPattern.matcher(path).matches())
-                    .forEach(listener::onResult);
-        });
+        if (streaming) {
+            stream(indexer, matcher, listener, baseDirs, limit);
+        } else {
+            final List<Path> results = limit == NO_LIMIT ? indexer.find(matcher) : indexer.find(matcher, limit);
+            report(results, listener, baseDirs);
+        }
         listener.onComplete(System.currentTimeMillis());
+    }
+
+    /**
+     * Searches every name of {@code patterns} at once, taking everything else from {@code matcher}, and reports
+     * the results of each pattern in turn, sorted and grouped by base directory.
+     *
+     * @param limit maximum number of results per pattern, {@link #NO_LIMIT} for all of them.
+     */
+    public static void search(final FileIndexer indexer, final List<String> patterns, final FileMatcher matcher,
+                              final SearchListener listener, final List<Path> baseDirs, final int limit) {
+        listener.onStart(System.currentTimeMillis(), patterns.size() + " patterns");
+        final List<List<Path>> results = indexer.findAll(patterns, matcher);
+        for (int i = 0; i < patterns.size(); i++) {
+            final List<Path> paths = results.get(i);
+            listener.onPattern(patterns.get(i));
+            report(paths.size() > limit ? paths.subList(0, limit) : paths, listener, baseDirs);
+            results.set(i, null);
+        }
+        listener.onComplete(System.currentTimeMillis());
+    }
+
+    private static void report(final List<Path> results, final SearchListener listener, final List<Path> baseDirs) {
+        // one walk down the trie per result; results are sorted, so every bucket is sorted too.
+        final PathTrie trie = new PathTrie(baseDirs);
+        final List<List<String>> buckets = new ArrayList<>(baseDirs.size());
+        for (int i = 0; i < baseDirs.size(); i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (Path path : results) {
+            final String s = path.toString();
+            trie.forEachMatch(path, dir -> buckets.get(dir).add(s));
+        }
         results.clear();
+        for (int i = 0; i < baseDirs.size(); i++) {
+            listener.onChangeDirectory(baseDirs.get(i).toString());
+            buckets.get(i).forEach(listener::onResult);
+        }
     }
 
-    private static Pattern getDirPattern(String dir) {
-        return Pattern.compile(String.format(PATTERN_FORMAT, RegexUtils.escape(dir)), Pattern.CASE_INSENSITIVE);
+    private static void stream(final FileIndexer indexer, final FileMatcher matcher, final SearchListener listener,
+                               final List<Path> baseDirs, final int limit) {
+        if (limit <= 0) {
+            return;
+        }
+        final PathTrie trie = new PathTrie(baseDirs);
+        final int[] count = {0};
+        final int[] current = {-1};
+        indexer.find(matcher, path -> {
+            final int dir = trie.firstMatch(path);
+            // a header is only repeated when results of different base dirs interleave.
+            if (dir >= 0 && dir != current[0]) {
+                listener.onChangeDirectory(baseDirs.get(current[0] = dir).toString());
+            }
+            listener.onResult(path.toString());
+            return ++count[0] < limit;
+        });
     }
 
 }
@@ -0,0 +1,15 @@
+package com.file.search;
+
+/**
+ * Type of an indexed entry, as seen without following symbolic links.
+ *
+ * @author ahmad
+ */
+public enum FileType {
+
+    REGULAR,
+    DIRECTORY,
+    SYMBOLIC_LINK,
+    OTHER
+
+}
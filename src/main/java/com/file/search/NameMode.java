@@ -0,0 +1,28 @@
+package com.file.search;
+
+/**
+ * How the name of a query is matched against file names.
+ *
+ * @author ahmad
+ */
+public enum NameMode {
+
+    /**
+     * File names containing the name.
+     */
+    LITERAL,
+    /**
+     * File names matching the name as a whole, read as a glob of {@code *}, {@code ?}, {@code [...]} and
+     * {@code \} escapes.
+     */
+    GLOB,
+    /**
+     * File names containing a match of the name, read as a {@link java.util.regex.Pattern}.
+     */
+    REGEX,
+    /**
+     * File names within {@link FileMatcher#getMaxEdits()} edits of the name as a whole, closest first.
+     */
+    FUZZY
+
+}
@@ -0,0 +1,101 @@
+package com.file.search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Writes nothing but the results, one per line, for other programs to read. Results of different base
+ * directories are not told apart; those of different patterns of a batch search follow a line with {@link #PATTERN}
+ * and the pattern. Lines are {@link #escape(String) escaped}, so that names with line breaks in them do not break
+ * them. Flushing and closing the writer is left to its owner.
+ *
+ * @author ahmad
+ */
+public final class PlainSearchListener implements SearchListener {
+
+    public static final String PATTERN = "# ";
+
+    private final Writer writer;
+
+    public PlainSearchListener(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void onStart(long when, String pattern) {
+    }
+
+    @Override
+    public void onResult(String path) {
+        try {
+            writer.write(escape(path));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onChangeDirectory(String path) {
+    }
+
+    @Override
+    public void onPattern(String pattern) {
+        try {
+            writer.write(PATTERN);
+            writer.write(escape(pattern));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onComplete(long when) {
+    }
+
+    /**
+     * Returns {@code s} with backslashes, line feeds, carriage returns and NUL characters written as {@code \\},
+     * {@code \n}, {@code \r} and {@code \0}, so that it takes up a single line free of {@link Daemon#ARGUMENT}s.
+     */
+    public static String escape(String s) {
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            final char escaped = c == '\\' ? '\\' : c == '\n' ? 'n' : c == '\r' ? 'r' : c == '\0' ? '0' : 0;
+            if (escaped != 0 && sb == null) {
+                sb = new StringBuilder(s.length() + 16).append(s, 0, i);
+            }
+            if (sb != null) {
+                if (escaped != 0) {
+                    sb.append('\\').append(escaped);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+
+    /**
+     * Undoes {@link #escape(String)}.
+     */
+    public static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) {
+                sb.append(c);
+                continue;
+            }
+            final char next = s.charAt(++i);
+            sb.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next == '0' ? '\0' : next);
+        }
+        return sb.toString();
+    }
+
+}
@@ -11,6 +11,12 @@ public interface SearchListener {
 
     void onChangeDirectory(String path);
 
+    /**
+     * Called before the results of every pattern of a batch search.
+     */
+    default void onPattern(String pattern) {
+    }
+
     void onComplete(long when);
 
 }
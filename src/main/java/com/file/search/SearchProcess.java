@@ -2,69 +2,311 @@ package com.file.search;
 
 import com.file.search.util.FileUtils;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Phaser;
 import java.util.concurrent.RecursiveAction;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 /**
+ * Walks the given directories, passing every entry to the action together with its attributes. Attributes are
+ * read once per entry, without following symbolic links.
+ * <p>
+ * Every storage device is walked by a pool of workers of its own, sized to suit it (see {@link Devices}), so a
+ * slow device only ever holds up its own workers. A walk reaching the mount point of another device hands it to
+ * the workers of that device, if the {@link Devices.Crossing} policy lets it go on there at all.
+ * <p>
+ * Every task lists a batch of directories depth first, and only hands half of its pending directories to a new
+ * task while there are idle workers; so a tree of many small directories costs a few tasks per worker instead of
+ * one task per directory. Large directories are read in chunks of {@link #CHUNK_SIZE} entries, and while there
+ * are idle workers a chunk goes to a new task as soon as it is read, which reads the attributes of its entries
+ * and walks the directories among them; so a single directory of millions of entries is spread over all workers
+ * of its device.
+ * <p>
+ * Entries excluded by the {@link ExclusionRules} are skipped, and their subtrees never walked.
+ * <p>
+ * A {@link BatchAction} gets the entries of every task in batches of up to {@link #CHUNK_SIZE} instead, so an
+ * action that has to lock something shared takes the lock once per batch rather than once per entry.
+ *
  * @author ahmad
  */
 public final class SearchProcess {
 
     public static final int DEFAULT_PARALLELISM = 2;
 
+    /**
+     * System property setting the number of workers of every device, in place of the number that suits it.
+     */
+    public static final String PARALLELISM_PROPERTY = "ffs.parallelism";
+
+    /**
+     * A task keeps its directories for itself while at least this many tasks are queued beyond what the
+     * workers can take.
+     */
+    private static final int SURPLUS_TASKS = 2;
+
+    private static final int CHUNK_SIZE = 1 << 10;
+    private static final int FORKED_PRUNE_SIZE = 1 << 6;
+
     private final Iterable<Path> dirs;
-    private final Consumer<Path> action;
-    private final ForkJoinPool pool;
+    private final BiConsumer<Path, BasicFileAttributes> action;
+    private final BatchAction batchAction;
+    private final ExclusionRules exclusions;
+    private final Devices devices;
+    private final int parallelism;
+    private final Map<Devices.Device, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * One party for the caller and one for every device walk that is not done yet.
+     */
+    private final Phaser walks = new Phaser(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public SearchProcess(Iterable<Path> dirs, BiConsumer<Path, BasicFileAttributes> action) {
+        this(dirs, action, ExclusionRules.NONE);
+    }
+
+    public SearchProcess(Iterable<Path> dirs, BiConsumer<Path, BasicFileAttributes> action, int parallelism) {
+        this(dirs, action, ExclusionRules.NONE, Devices.load(), parallelism);
+    }
+
+    public SearchProcess(Iterable<Path> dirs, BiConsumer<Path, BasicFileAttributes> action,
+                         ExclusionRules exclusions) {
+        this(dirs, action, exclusions, Devices.load());
+    }
+
+    public SearchProcess(Iterable<Path> dirs, BiConsumer<Path, BasicFileAttributes> action,
+                         ExclusionRules exclusions, Devices devices) {
+        this(dirs, action, exclusions, devices, Integer.getInteger(PARALLELISM_PROPERTY, 0));
+    }
+
+    /**
+     * @param parallelism the number of workers of every device, or {@code 0} for the number that suits it.
+     */
+    public SearchProcess(Iterable<Path> dirs, BiConsumer<Path, BasicFileAttributes> action,
+                         ExclusionRules exclusions, Devices devices, int parallelism) {
+        this(dirs, action, null, exclusions, devices, parallelism);
+    }
 
-    public SearchProcess(Iterable<Path> dirs, Consumer<Path> action) {
-        this(dirs, action, DEFAULT_PARALLELISM);
+    public SearchProcess(Iterable<Path> dirs, BatchAction action, ExclusionRules exclusions, Devices devices) {
+        this(dirs, null, action, exclusions, devices, Integer.getInteger(PARALLELISM_PROPERTY, 0));
     }
 
-    public SearchProcess(Iterable<Path> dirs, Consumer<Path> action, int parallelism) {
+    private SearchProcess(Iterable<Path> dirs, BiConsumer<Path, BasicFileAttributes> action, BatchAction batchAction,
+                          ExclusionRules exclusions, Devices devices, int parallelism) {
         this.dirs = dirs;
         this.action = action;
-        pool = new ForkJoinPool(parallelism);
+        this.batchAction = batchAction;
+        this.exclusions = exclusions;
+        this.devices = devices;
+        this.parallelism = parallelism;
     }
 
     public void doProcess() {
+        final Map<Devices.Device, ArrayDeque<Path>> roots = new LinkedHashMap<>();
+        final Batch batch = new Batch();
         for (Path dir : dirs) {
-            if (Files.isReadable(dir)) {
-                pool.invoke(new FolderProcessor(dir));
+            if (!exclusions.excludes(dir) && Files.isReadable(dir)) {
+                try {
+                    final BasicFileAttributes attributes = FileUtils.readAttributes(dir, true);
+                    if (exclusions.excludes(dir, attributes)) {
+                        continue;
+                    }
+                    batch.accept(dir, attributes);
+                    roots.computeIfAbsent(devices.deviceOf(dir), device -> new ArrayDeque<>()).add(dir);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
         }
-        pool.shutdown();
+        batch.flush();
+        try {
+            roots.forEach(this::walk);
+            walks.arriveAndAwaitAdvance();
+        } finally {
+            pools.values().forEach(ForkJoinPool::shutdown);
+        }
+        final Throwable e = failure.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e != null) {
+            throw (Error) e;
+        }
+    }
+
+    /**
+     * Hands {@code dirs}, which are on {@code device} and already passed to the action, to the workers of
+     * {@code device}.
+     */
+    private void walk(Devices.Device device, ArrayDeque<Path> dirs) {
+        final ForkJoinPool pool = pools.computeIfAbsent(device,
+                d -> new ForkJoinPool(parallelism > 0 ? parallelism : d.getWorkers()));
+        walks.register();
+        pool.execute(() -> {
+            try {
+                new FolderProcessor(device, dirs, null).invoke();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                walks.arriveAndDeregister();
+            }
+        });
     }
 
     private final class FolderProcessor extends RecursiveAction {
 
         private static final long serialVersionUID = -6084708633762147774L;
 
-        private final Path dir;
+        private final Devices.Device device;
+
+        /**
+         * Directories already passed to the action but not listed yet.
+         */
+        private final ArrayDeque<Path> pending;
 
-        private FolderProcessor(Path dir) {
-            this.dir = dir;
+        /**
+         * A chunk of a directory listing handed over by another task, or {@code null}.
+         */
+        private final List<Path> entries;
+
+        private final List<FolderProcessor> forked = new ArrayList<>();
+        private final Batch batch = new Batch();
+
+        private FolderProcessor(Devices.Device device, ArrayDeque<Path> pending, List<Path> entries) {
+            this.device = device;
+            this.pending = pending;
+            this.entries = entries;
         }
 
         @Override
         protected void compute() {
-            action.accept(dir);
-            final List<RecursiveAction> actions = new ArrayList<>();
-            FileUtils.forEachEntry(dir, path -> {
-                if (Files.isDirectory(path)) {
-                    actions.add(new FolderProcessor(path));
-                } else {
-                    action.accept(path);
+            if (entries != null) {
+                // already filtered when listed.
+                for (Path path : entries) {
+                    final BasicFileAttributes attributes = FileUtils.readAttributes(path);
+                    if (attributes != null) {
+                        visit(path, attributes);
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                if (pending.size() > 1 && idle()) {
+                    fork(new FolderProcessor(device, split(), null));
                 }
-            });
-            invokeAll(actions);
-            actions.clear();
+                FileUtils.forEachEntry(pending.pollLast(), path -> !exclusions.excludes(path), CHUNK_SIZE, chunk -> {
+                    if (!idle()) {
+                        return false;
+                    }
+                    fork(new FolderProcessor(device, new ArrayDeque<>(), chunk));
+                    return true;
+                }, this::visit);
+            }
+            batch.flush();
+            for (FolderProcessor task : forked) {
+                task.join();
+            }
+        }
+
+        private void visit(Path path, BasicFileAttributes attributes) {
+            if (exclusions.excludes(path, attributes)) {
+                return;
+            }
+            // symbolic links to directories are indexed, not followed.
+            if (!attributes.isDirectory()) {
+                batch.accept(path, attributes);
+                return;
+            }
+            final Devices.Device mounted = devices.mountedAt(path);
+            if (mounted == null || mounted == device) {
+                batch.accept(path, attributes);
+                pending.addLast(path);
+            } else if (devices.crosses(device, mounted)) {
+                batch.accept(path, attributes);
+                final ArrayDeque<Path> dirs = new ArrayDeque<>();
+                dirs.add(path);
+                walk(mounted, dirs);
+            }
+        }
+
+        private boolean idle() {
+            return getSurplusQueuedTaskCount() < SURPLUS_TASKS;
+        }
+
+        private void fork(FolderProcessor task) {
+            if (forked.size() >= FORKED_PRUNE_SIZE) {
+                // keeps the bookkeeping of a task listing a huge directory small.
+                forked.removeIf(ForkJoinTask::isDone);
+            }
+            task.fork();
+            forked.add(task);
+        }
+
+        /**
+         * Takes the oldest half of the pending directories, which are the closest to the root and so most likely
+         * the largest subtrees.
+         */
+        private ArrayDeque<Path> split() {
+            final ArrayDeque<Path> half = new ArrayDeque<>();
+            for (int n = pending.size() / 2; n > 0; n--) {
+                half.addLast(pending.pollFirst());
+            }
+            return half;
+        }
+
+    }
+
+    /**
+     * Takes entries a batch at a time, the attributes of {@code paths.get(i)} being {@code attributes.get(i)}.
+     * Batches are handed over by many workers at once, and the lists are reused once the action returns.
+     */
+    @FunctionalInterface
+    public interface BatchAction {
+
+        void accept(List<Path> paths, List<BasicFileAttributes> attributes);
+
+    }
+
+    /**
+     * The entries of one task not handed to the action yet; passes every entry on at once with no {@link
+     * BatchAction}.
+     */
+    private final class Batch {
+
+        private final List<Path> paths = new ArrayList<>();
+        private final List<BasicFileAttributes> attributes = new ArrayList<>();
+
+        private void accept(Path path, BasicFileAttributes attrs) {
+            if (batchAction == null) {
+                action.accept(path, attrs);
+                return;
+            }
+            paths.add(path);
+            attributes.add(attrs);
+            if (paths.size() >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (paths.isEmpty()) {
+                return;
+            }
+            batchAction.accept(paths, attributes);
+            paths.clear();
+            attributes.clear();
         }
 
     }
 
-}
\ No newline at end of file
+}
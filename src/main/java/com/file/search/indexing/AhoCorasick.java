@@ -0,0 +1,158 @@
+package com.file.search.indexing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Aho-Corasick automaton over the UTF-8 bytes of a set of patterns, compiled to a table of transitions so that a
+ * name is scanned with one lookup per byte whatever the number of patterns. Bytes are mapped to the classes of
+ * bytes the patterns use, which keeps the table at a row of a few dozen entries per state.
+ * <p>
+ * Ignoring case folds ASCII letters only, like {@link java.util.regex.Pattern#CASE_INSENSITIVE}. Immutable, and
+ * so may be used by any number of threads.
+ *
+ * @author ahmad
+ */
+final class AhoCorasick {
+
+    private static final int NONE = -1;
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final boolean ignoreCase;
+    private final int[] classes = new int[256];
+    private final int classCount;
+
+    /**
+     * {@code transitions[state * classCount + class]} is the next state.
+     */
+    private final int[] transitions;
+
+    /**
+     * The first pattern ending at a state; further ones (duplicates) are chained through {@link #nextPatterns}.
+     */
+    private final int[] firstPatterns;
+    private final int[] nextPatterns;
+
+    /**
+     * The closest proper suffix state at which a pattern ends, or {@link #NONE}.
+     */
+    private final int[] outputLinks;
+
+    AhoCorasick(List<String> patterns, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        final List<byte[]> encoded = new ArrayList<>(patterns.size());
+        int length = 0;
+        for (String pattern : patterns) {
+            final byte[] bytes = pattern.getBytes(UTF_8);
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = fold(bytes[i]);
+                if (classes[bytes[i] & 0xFF] == 0) {
+                    classes[bytes[i] & 0xFF] = -1;
+                }
+            }
+            encoded.add(bytes);
+            length += bytes.length;
+        }
+        // class 0 stands for every byte no pattern uses.
+        int c = 1;
+        for (int b = 0; b < classes.length; b++) {
+            if (classes[b] != 0) {
+                classes[b] = c++;
+            }
+        }
+        classCount = c;
+        final int maxStates = length + 1;
+        final int[] table = new int[maxStates * classCount];
+        Arrays.fill(table, NONE);
+        firstPatterns = new int[maxStates];
+        Arrays.fill(firstPatterns, NONE);
+        nextPatterns = new int[patterns.size()];
+        int states = 1;
+        for (int p = 0; p < encoded.size(); p++) {
+            int state = 0;
+            for (byte b : encoded.get(p)) {
+                final int i = state * classCount + classes[b & 0xFF];
+                if (table[i] == NONE) {
+                    table[i] = states++;
+                }
+                state = table[i];
+            }
+            nextPatterns[p] = firstPatterns[state];
+            firstPatterns[state] = p;
+        }
+        transitions = Arrays.copyOf(table, states * classCount);
+        outputLinks = new int[states];
+        // breadth first, so that the failure state of every state is complete before the state itself.
+        final int[] failures = new int[states];
+        final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        outputLinks[0] = NONE;
+        for (int k = 0; k < classCount; k++) {
+            final int child = transitions[k];
+            if (child == NONE) {
+                transitions[k] = 0;
+            } else {
+                failures[child] = 0;
+                outputLinks[child] = firstPatterns[0] != NONE ? 0 : NONE;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            final int failure = failures[state];
+            for (int k = 0; k < classCount; k++) {
+                final int i = state * classCount + k;
+                final int fallback = transitions[failure * classCount + k];
+                final int child = transitions[i];
+                if (child == NONE) {
+                    transitions[i] = fallback;
+                } else {
+                    failures[child] = fallback;
+                    outputLinks[child] = firstPatterns[fallback] != NONE ? fallback : outputLinks[fallback];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    private byte fold(byte b) {
+        return ignoreCase && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Returns the distinct patterns that occur in name {@code id} of {@code names}, in ascending order.
+     */
+    int[] find(NameTable names, int id) {
+        final long start = names.offset(id);
+        final long end = start + names.length(id);
+        int[] found = NO_MATCHES;
+        int n = 0;
+        int state = 0;
+        for (long i = start; i < end; i++) {
+            state = transitions[state * classCount + classes[fold(names.byteAt(i)) & 0xFF]];
+            for (int s = firstPatterns[state] != NONE ? state : outputLinks[state]; s != NONE; s = outputLinks[s]) {
+                for (int p = firstPatterns[s]; p != NONE; p = nextPatterns[p]) {
+                    if (n == found.length) {
+                        found = Arrays.copyOf(found, Math.max(4, n << 1));
+                    }
+                    found[n++] = p;
+                }
+            }
+        }
+        if (n <= 1) {
+            return n == found.length ? found : Arrays.copyOf(found, n);
+        }
+        Arrays.sort(found, 0, n);
+        int distinct = 1;
+        for (int i = 1; i < n; i++) {
+            if (found[i] != found[distinct - 1]) {
+                found[distinct++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, distinct);
+    }
+
+}
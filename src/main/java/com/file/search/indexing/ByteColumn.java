@@ -0,0 +1,137 @@
+package com.file.search.indexing;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Growable {@code byte} column stored in fixed-size chunks. Chunks are either heap arrays or private
+ * (copy-on-write) views of a mapped index file, so a mapped column is only copied page by page as it is written.
+ * <p>
+ * A {@link #snapshot()} shares the chunks of the column; a shared chunk is copied the first time the column
+ * writes to it afterwards, so a snapshot stays as it was taken while the column moves on.
+ *
+ * @author ahmad
+ */
+final class ByteColumn {
+
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final byte defaultValue;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+
+    /**
+     * Whether a chunk is also referenced by a snapshot, and so has to be copied before it is written.
+     */
+    private boolean[] shared = new boolean[0];
+
+    ByteColumn(byte defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    static ByteColumn map(FileChannel channel, long position, long length, byte defaultValue) throws IOException {
+        final ByteColumn column = new ByteColumn(defaultValue);
+        if (length == 0) {
+            return column;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("index section too large to map");
+        }
+        final ByteBuffer mapped = channel.map(FileChannel.MapMode.PRIVATE, position, length);
+        final int full = (int) (length >>> CHUNK_SHIFT);
+        final int rest = (int) (length & CHUNK_MASK);
+        column.chunks = new ByteBuffer[full + (rest == 0 ? 0 : 1)];
+        column.shared = new boolean[column.chunks.length];
+        for (int i = 0; i < full; i++) {
+            ((Buffer) mapped).limit((i + 1) * CHUNK_SIZE).position(i * CHUNK_SIZE);
+            column.chunks[i] = mapped.slice();
+        }
+        if (rest != 0) {
+            final ByteBuffer last = column.newChunk();
+            ((Buffer) mapped).limit(mapped.capacity()).position(full * CHUNK_SIZE);
+            last.put(mapped.slice());
+            column.chunks[full] = last;
+        }
+        return column;
+    }
+
+    byte get(long i) {
+        return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+    }
+
+    void set(long i, byte value) {
+        final int c = (int) (i >>> CHUNK_SHIFT);
+        if (shared[c]) {
+            unshare(c);
+        }
+        chunks[c].put((int) (i & CHUNK_MASK), value);
+    }
+
+    /**
+     * Returns a read-only copy of this column as it is now, at the cost of copying the array of chunks.
+     */
+    ByteColumn snapshot() {
+        final ByteColumn snapshot = new ByteColumn(defaultValue);
+        Arrays.fill(shared, true);
+        snapshot.chunks = chunks.clone();
+        snapshot.shared = shared.clone();
+        return snapshot;
+    }
+
+    long capacity() {
+        return (long) chunks.length << CHUNK_SHIFT;
+    }
+
+    void ensureCapacity(long n) {
+        final int needed = (int) ((n + CHUNK_MASK) >>> CHUNK_SHIFT);
+        if (needed > chunks.length) {
+            final ByteBuffer[] c = Arrays.copyOf(chunks, needed);
+            for (int i = chunks.length; i < needed; i++) {
+                c[i] = newChunk();
+            }
+            chunks = c;
+            shared = Arrays.copyOf(shared, needed);
+        }
+    }
+
+    /**
+     * Writes the first {@code n} values, big-endian, at the current position of {@code channel}.
+     */
+    void write(FileChannel channel, long n) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        for (int i = 0; n > 0; i++, n -= CHUNK_SIZE) {
+            final int count = (int) Math.min(n, CHUNK_SIZE);
+            final ByteBuffer chunk = chunks[i].duplicate();
+            ((Buffer) chunk).clear().limit(count);
+            ((Buffer) buffer).clear();
+            buffer.put(chunk);
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private void unshare(int c) {
+        final ByteBuffer chunk = chunks[c].duplicate();
+        ((Buffer) chunk).clear();
+        final ByteBuffer copy = ByteBuffer.allocate(CHUNK_SIZE);
+        copy.put(chunk);
+        chunks[c] = copy;
+        shared[c] = false;
+    }
+
+    private ByteBuffer newChunk() {
+        final byte[] values = new byte[CHUNK_SIZE];
+        if (defaultValue != 0) {
+            Arrays.fill(values, defaultValue);
+        }
+        return ByteBuffer.wrap(values);
+    }
+
+}
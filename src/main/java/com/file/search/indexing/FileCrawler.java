@@ -1,52 +1,92 @@
 package com.file.search.indexing;
 
+import com.file.search.Devices;
+import com.file.search.ExclusionRules;
 import com.file.search.util.FileUtils;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardWatchEventKinds.*;
 
 /**
+ * Keeps the index in line with the file system. Entries excluded by the {@link ExclusionRules} of the indexer are
+ * skipped wherever directories are listed or change events come in, so nothing below them is ever looked at; an
+ * entry indexed before it was excluded is dropped the next time its directory is checked. So are the file systems
+ * mounted below that the {@link Devices} of the indexer do not cross into.
+ * <p>
+ * Directories are polled once every {@link Devices.Device#getPollFactor() poll factor} update intervals of their
+ * device, and those on devices that are not {@link Devices.Device#isWatchable() watchable} are polled even when
+ * watching.
+ *
  * @author ahmad
  */
 public final class FileCrawler {
 
     public static final long DEFAULT_UPDATE_INTERVAL_MILLIS = 5000L;
 
+    public enum Mode {
+        /**
+         * stat every indexed directory once per update interval.
+         */
+        POLL,
+        /**
+         * only look at directories reported by a {@link WatchService}, polling just the directories that could
+         * not be registered.
+         */
+        WATCH
+    }
+
     private final FileIndexer indexer;
+    private final Mode mode;
     private final long updateIntervalMillis;
-    private final BiConsumer<IndexedFile, Set<IndexedFile>> updater = this::processDir;
+    private final BiConsumer<IndexedFile, List<IndexedFile>> updater = this::processDir;
     private final AtomicBoolean running = new AtomicBoolean(false);
+    private final Set<Path> unwatched = new SetFromMap<>();
+
+    /**
+     * The directory every watch key is for. A directory that is moved keeps its key, and registering it again
+     * returns that key, whose {@link WatchKey#watchable() watchable} is still the old path; so the path is kept
+     * here, and updated when the directory is registered under its new one.
+     */
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    /**
+     * The directories of {@link #keys}.
+     */
+    private final Set<Path> watched = new SetFromMap<>();
+
+    private volatile WatchService watcher;
+    private volatile boolean watchLimitReached;
 
     public FileCrawler(FileIndexer indexer) {
-        this(indexer, DEFAULT_UPDATE_INTERVAL_MILLIS);
+        this(indexer, Mode.WATCH);
     }
 
-    public FileCrawler(FileIndexer indexer, long updateIntervalMillis) {
-        this.indexer = indexer;
-        this.updateIntervalMillis = updateIntervalMillis;
-        Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+    public FileCrawler(FileIndexer indexer, Mode mode) {
+        this(indexer, mode, DEFAULT_UPDATE_INTERVAL_MILLIS);
     }
 
-    private static long getLastModified(Path path) {
-        try {
-            return Files.getLastModifiedTime(path).toMillis();
-        } catch (IOException e) {
-            return -1L;
-        }
+    public FileCrawler(FileIndexer indexer, Mode mode, long updateIntervalMillis) {
+        this.indexer = indexer;
+        this.mode = mode;
+        this.updateIntervalMillis = updateIntervalMillis;
     }
 
     public void start() {
         if (running.compareAndSet(false, true)) {
-            final Thread t = new Thread(() -> {
-                while (!Thread.currentThread().isInterrupted() && running.get()) {
-                    indexer.forEachDir(updater);
-                    sleep();
-                }
-            });
+            // only a crawler that was started is held on to until shutdown.
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+            final Thread t = new Thread(mode == Mode.WATCH ? this::watch : this::poll);
             t.setDaemon(true);
             t.start();
         }
@@ -56,10 +96,23 @@ public final class FileCrawler {
         return running.get();
     }
 
+    public Mode getMode() {
+        return mode;
+    }
+
     public void stop() {
         running.set(false);
     }
 
+    /**
+     * Watches directories that were indexed other than by this crawler, if it is watching at all.
+     */
+    void registerAll(Iterable<Path> dirs) {
+        for (Path dir : dirs) {
+            register(dir);
+        }
+    }
+
     private void sleep() {
         try {
             Thread.sleep(updateIntervalMillis);
@@ -68,46 +121,261 @@ public final class FileCrawler {
         }
     }
 
-    private void processDir(final IndexedFile dir, final Set<IndexedFile> children) {
-        final Path p = dir.getPath();
-        if (Files.exists(p)) {
-            if (getLastModified(p) > dir.getLastModified()) {
-                dir.setLastModified(System.currentTimeMillis());
-                checkUpdates(dir, children);
+    private void poll() {
+        for (long round = 0L; !Thread.currentThread().isInterrupted() && running.get(); round++) {
+            indexer.forEachDir(due(round), updater);
+            sleep();
+        }
+    }
+
+    /**
+     * Polls every indexed directory once, whatever its device.
+     */
+    void pollAll() {
+        indexer.forEachDir(updater);
+    }
+
+    /**
+     * Accepts the directories to poll in poll round {@code round}.
+     */
+    private Predicate<Path> due(long round) {
+        final Devices devices = indexer.getDevices();
+        return round == 0L ? dir -> true : dir -> round % devices.deviceOf(dir).getPollFactor() == 0L;
+    }
+
+    private void watch() {
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+            watcher = ws;
+            // nothing excluded is left in the index once loaded, so no watch or poll is spent on it.
+            indexer.forEachDir((dir, children) -> register(dir.getPath()));
+            indexer.forEachDir(updater);
+            long lastPoll = System.currentTimeMillis();
+            long round = 1L;
+            while (!Thread.currentThread().isInterrupted() && running.get()) {
+                final WatchKey key = ws.poll(updateIntervalMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    processEvents(key);
+                }
+                final long now = System.currentTimeMillis();
+                if (now - lastPoll >= updateIntervalMillis) {
+                    final Predicate<Path> due = due(round++);
+                    unwatched.forEach(dir -> {
+                        if (!due.test(dir)) {
+                            return;
+                        }
+                        final List<IndexedFile> children = indexer.getChildren(dir);
+                        if (children == null) {
+                            unwatched.remove(dir);
+                        } else {
+                            processDir(new IndexedFile(dir, indexer.getLastModified(dir)), children);
+                        }
+                    });
+                    lastPoll = now;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            watcher = null;
+            poll();
+        } catch (InterruptedException ignored) {
+        } finally {
+            watcher = null;
+            unwatched.clear();
+            keys.clear();
+            watched.clear();
+        }
+    }
+
+    private void register(Path dir) {
+        final WatchService ws = watcher;
+        if (ws == null) {
+            return;
+        }
+        if (!watchLimitReached && indexer.getDevices().deviceOf(dir).isWatchable()) {
+            try {
+                final Path old = keys.put(dir.register(ws, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                if (old != null) {
+                    watched.remove(old);
+                }
+                watched.add(dir);
+                return;
+            } catch (NoSuchFileException | NotDirectoryException e) {
+                return;
+            } catch (IOException e) {
+                // most likely the watch descriptor limit (fs.inotify.max_user_watches on linux).
+                watchLimitReached = true;
+            }
+        }
+        unwatched.add(dir);
+    }
+
+    private void processEvents(WatchKey key) {
+        final Path dir = keys.getOrDefault(key, (Path) key.watchable());
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            // moved or deleted before its parent's events were seen. Once moved, it is registered afresh under
+            // its new path by the event of the move; until then, its events could only be resolved wrongly.
+            key.cancel();
+            unwatch(key);
+            if (indexer.isDirectory(dir)) {
+                indexer.removeDir(dir);
+            }
+            return;
+        }
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            final WatchEvent.Kind<?> kind = event.kind();
+            if (kind == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            final Path path = dir.resolve((Path) event.context());
+            if (kind == ENTRY_DELETE) {
+                removed(path);
+                continue;
+            }
+            final ExclusionRules exclusions = indexer.getExclusionRules();
+            if (exclusions.excludes(path)) {
+                continue;
+            }
+            final BasicFileAttributes attributes = FileUtils.readAttributes(path);
+            if (attributes == null || excludes(path, attributes)) {
+                continue;
+            }
+            final long lastModified = retyped(path, attributes) ? 0L : indexer.getLastModified(path);
+            if (attributes.isDirectory()) {
+                if (lastModified == 0L) {
+                    newDir(path, attributes);
+                }
+            } else if (lastModified == 0L) {
+                indexer.group(path, attributes);
+            } else {
+                indexer.update(path, attributes);
+            }
+        }
+        if (!key.reset()) {
+            unwatch(key);
+            if (!Files.exists(dir)) {
+                removed(dir);
+            }
+        } else if (overflow) {
+            rescan(dir);
+        }
+    }
+
+    private void unwatch(WatchKey key) {
+        final Path dir = keys.remove(key);
+        if (dir != null) {
+            watched.remove(dir);
+        }
+    }
+
+    private void removed(Path path) {
+        if (indexer.isDirectory(path)) {
+            indexer.removeDir(path);
+        } else {
+            indexer.removeFile(path);
+        }
+    }
+
+    /**
+     * Lists {@code dir} again after its events were lost, and the directories below it that are not watched. An
+     * overflow reaches every watch key at once, so each watched directory is listed again when its own key is
+     * processed, instead of with every directory above it.
+     */
+    private void rescan(Path dir) {
+        final List<IndexedFile> children = indexer.getChildren(dir);
+        if (children == null) {
+            return;
+        }
+        if (Files.exists(dir)) {
+            indexer.update(dir);
+            checkUpdates(dir, children);
+            for (IndexedFile child : children) {
+                if (!watched.contains(child.getPath())) {
+                    rescan(child.getPath());
+                }
             }
         } else {
             indexer.removeDir(dir);
         }
     }
 
-    private void checkUpdates(final IndexedFile dir, final Set<IndexedFile> children) {
-        for (IndexedFile child : children) {
-            final Path path = child.getPath();
-            if (!Files.exists(path) && !Files.isDirectory(path)) {
-                indexer.removeFile(path);
+    private void processDir(final IndexedFile dir, final List<IndexedFile> children) {
+        final Path p = dir.getPath();
+        final BasicFileAttributes attributes = FileUtils.readAttributes(p);
+        if (attributes != null && attributes.isDirectory()) {
+            if (attributes.lastModifiedTime().toMillis() != dir.getLastModified()) {
+                indexer.update(p, attributes);
+                checkUpdates(p, children);
             }
+        } else {
+            // a file that replaced it is indexed when its parent is listed.
+            indexer.removeDir(p);
         }
-        FileUtils.forEachEntry(dir.getPath(), path -> {
-            long lastModified = indexer.getLastModified(path);
-            if (Files.isDirectory(path)) {
+    }
+
+    /**
+     * Lists {@code dir} once, reading the attributes of every entry once; indexed children that are not listed
+     * anymore are removed without looking them up one by one.
+     */
+    private void checkUpdates(final Path dir, final List<IndexedFile> children) {
+        final Set<Path> listed = new HashSet<>();
+        final ExclusionRules exclusions = indexer.getExclusionRules();
+        FileUtils.forEachEntry(dir, path -> !exclusions.excludes(path), (path, attributes) -> {
+            if (excludes(path, attributes)) {
+                return;
+            }
+            listed.add(path);
+            final long lastModified = retyped(path, attributes) ? 0L : indexer.getLastModified(path);
+            if (attributes.isDirectory()) {
                 if (lastModified == 0L) {
-                    newDir(path);
+                    newDir(path, attributes);
                 }
             } else if (lastModified == 0L) {
-                indexer.group(path);
-            } else if (getLastModified(path) > lastModified) {
-                indexer.setLastModified(path);
+                indexer.group(path, attributes);
+            } else if (attributes.lastModifiedTime().toMillis() != lastModified) {
+                indexer.update(path, attributes);
             }
         });
+        for (IndexedFile child : children) {
+            if (!listed.contains(child.getPath())) {
+                indexer.removeFile(child.getPath());
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of {@code path} if it was indexed as a directory and is a file now, or the other way
+     * around, and tells whether it did; it is then indexed as a new entry.
+     */
+    private boolean retyped(Path path, BasicFileAttributes attributes) {
+        if (indexer.getLastModified(path) == 0L || attributes.isDirectory() == indexer.isDirectory(path)) {
+            return false;
+        }
+        removed(path);
+        return true;
     }
 
-    private void newDir(final Path dir) {
-        indexer.group(dir);
-        FileUtils.forEachEntry(dir, path -> {
-            if (Files.isDirectory(path)) {
-                newDir(path);
+    /**
+     * Tells whether {@code path} is excluded, or is a directory the devices do not cross into.
+     */
+    private boolean excludes(Path path, BasicFileAttributes attributes) {
+        return indexer.getExclusionRules().excludes(path, attributes)
+                || attributes.isDirectory() && !indexer.getDevices().crossesInto(path);
+    }
+
+    private void newDir(final Path dir, final BasicFileAttributes attributes) {
+        indexer.group(dir, attributes);
+        register(dir);
+        final ExclusionRules exclusions = indexer.getExclusionRules();
+        FileUtils.forEachEntry(dir, path -> !exclusions.excludes(path), (path, attrs) -> {
+            if (excludes(path, attrs)) {
+                return;
+            }
+            if (attrs.isDirectory()) {
+                newDir(path, attrs);
             } else {
-                indexer.group(path);
+                indexer.group(path, attrs);
             }
         });
     }
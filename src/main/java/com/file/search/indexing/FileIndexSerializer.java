@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -23,6 +24,9 @@ public final class FileIndexSerializer {
     private static final String INDEX_LOCATION = System.getProperty("user.home") + File.separator + ".ffs" + File.separator;
     private static final String G_INDEX = INDEX_LOCATION + "g_index.ser";
     private static final String D_INDEX = INDEX_LOCATION + "d_index.ser";
+    private static final Path INDEX = Paths.get(INDEX_LOCATION, "index.ffs");
+    private static final Path INDEX_TMP = Paths.get(INDEX_LOCATION, "index.ffs.tmp");
+    static final Path JOURNAL = Paths.get(INDEX_LOCATION, "index.journal");
 
     static {
         try {
@@ -35,23 +39,48 @@ public final class FileIndexSerializer {
     private FileIndexSerializer() {
     }
 
-    public static void serializeIndex(final FileIndexWrapper index) {
-        try (ObjectSerializer<ConcurrentHashMap> g_serializer = new ObjectSerializer<>(G_INDEX, ConcurrentHashMap.class,
-                serializableMap(index.getFileGroups()), false);
-             ObjectSerializer<ConcurrentHashMap> d_serializer = new ObjectSerializer<>(D_INDEX, ConcurrentHashMap.class, index.getDirs(), false)) {
-            d_serializer.register(IndexedFile.class, new IndexedFileSerializer());
-            System.out.print("\nsaving index files ... ");
-            g_serializer.flushToDisk();
-            d_serializer.flushToDisk();
-            final Preferences preferences = Preferences.userNodeForPackage(FileIndexSerializer.class);
-            preferences.put("g_hash", createChecksum(G_INDEX));
-            preferences.put("d_hash", createChecksum(D_INDEX));
-            System.out.println("done.\n");
+    static boolean serializeIndex(final NodeTable index) {
+        System.out.print("\nsaving index file ... ");
+        final boolean saved = writeIndex(index);
+        System.out.println(saved ? "done.\n" : "failed.\n");
+        return saved;
+    }
+
+    /**
+     * Writes a new checkpoint of {@code index}, replacing the index file at once.
+     */
+    static boolean writeIndex(final NodeTable index) {
+        try {
+            index.write(INDEX_TMP);
+            Files.move(INDEX_TMP, INDEX, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
         } catch (IOException ignored) {
             ignored.printStackTrace();
+            return false;
+        }
+    }
+
+    static boolean hasIndex() {
+        return Files.exists(INDEX);
+    }
+
+    static NodeTable mapIndex() {
+        if (Files.exists(INDEX)) {
+            try {
+                System.out.print("\nmapping index file ... ");
+                final NodeTable index = NodeTable.read(INDEX);
+                System.out.println("done.\n");
+                return index;
+            } catch (IOException ignored) {
+                ignored.printStackTrace();
+            }
         }
+        return null;
     }
 
+    /**
+     * Reads the index files written before the mapped index format.
+     */
     public static FileIndexWrapper deserializeIndex() {
         final Preferences preferences = Preferences.userNodeForPackage(FileIndexSerializer.class);
         final String g_hash = preferences.get("g_hash", null);
@@ -76,10 +105,20 @@ public final class FileIndexSerializer {
         return null;
     }
 
-    private static ConcurrentHashMap<String, Set<String>> serializableMap(ConcurrentHashMap<String, Set<Path>> original) {
-        final ConcurrentHashMap<String, Set<String>> map = new ConcurrentHashMap<>();
-        original.forEach((s, paths) -> map.put(s, paths.stream().map(Path::toString).collect(Collectors.toSet())));
-        return map;
+    /**
+     * Deletes the index files written before the mapped index format, once they are checkpointed into one, so
+     * they are neither kept on disk nor checksummed again.
+     */
+    static void deleteLegacyIndex() {
+        try {
+            Files.deleteIfExists(Paths.get(G_INDEX));
+            Files.deleteIfExists(Paths.get(D_INDEX));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        final Preferences preferences = Preferences.userNodeForPackage(FileIndexSerializer.class);
+        preferences.remove("g_hash");
+        preferences.remove("d_hash");
     }
 
     private static ConcurrentHashMap<String, Set<Path>> originalMap(ConcurrentHashMap<String, Set<String>> fileGroups) {
@@ -1,35 +1,146 @@
 package com.file.search.indexing;
 
+import com.file.search.Devices;
+import com.file.search.ExclusionRules;
 import com.file.search.FileMatcher;
+import com.file.search.FileType;
+import com.file.search.NameMode;
 import com.file.search.SearchProcess;
+import com.file.search.util.CaseFolding;
+import com.file.search.util.FileUtils;
+import com.file.search.util.LevenshteinAutomaton;
 
+import java.io.IOException;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
+ * All indexed entries live in a single {@link NodeTable}, either built in memory or mapped from the index file.
+ * The crawler and the index job mutate the table under the write lock.
+ * <p>
+ * Queries do not lock the table; each one runs on a {@link NodeTable#snapshot()}, so it sees the index as of one
+ * moment however long it takes. A snapshot is taken by the first query after the table changed, and shared by the
+ * queries after it until the table changes again. Taking one needs the write lock for a moment; while a writer
+ * holds it, a query rather runs on the previous snapshot than wait. Trigrams of dropped names are kept until no
+ * snapshot in use has those names any more, so that the trigram index always covers the names of a snapshot.
+ * <p>
+ * Fuzzy queries walk a {@link NameDictionary} of the names of their snapshot. The first one builds it, and later
+ * ones merge the last dictionary with the names used or dropped since, which are recorded as the table changes.
+ * <p>
+ * Sorted results are kept in a {@link QueryCache}, which every change made to the table invalidates as it is made.
+ * <p>
+ * Every change made by the crawler is also appended to an {@link IndexJournal}, which is flushed every second and
+ * folded into a new index file (checkpoint) once it grows large. Loading maps the last checkpoint and replays
+ * the journal over it. An indexer {@link #FileIndexer(NodeTable, TrigramIndex, FileCrawler.Mode, long) of a table
+ * of its own} keeps it in memory only.
+ *
  * @author ahmad
  */
 public final class FileIndexer {
 
+    private static final int NAME_BATCH_SIZE = 1 << 16;
+    private static final long JOURNAL_FLUSH_INTERVAL_MILLIS = 1000L;
+    private static final long CHECKPOINT_THRESHOLD_BYTES = 64L << 20;
+    private static final int RETIRED = Integer.MIN_VALUE;
+    private static final int MAX_RENAMED = 1 << 18;
+
     private final FileCrawler crawler;
+    private final IndexJournal journal;
+    private final boolean persistent;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final QueryCache cache = new QueryCache();
+    private final ExclusionRules exclusions = ExclusionRules.load();
+    private volatile Devices devices = Devices.load();
+
+    /**
+     * Snapshots that may still be in use, oldest first. Guarded by the write lock.
+     */
+    private final ArrayDeque<Snapshot> snapshots = new ArrayDeque<>();
+
+    /**
+     * Names dropped from the table whose trigrams are still there, in the order they were dropped. Guarded by the
+     * write lock.
+     */
+    private final ArrayDeque<DroppedName> droppedNames = new ArrayDeque<>();
+
+    private volatile NodeTable table = new NodeTable();
+    private volatile TrigramIndex trigrams = new TrigramIndex();
+    private volatile boolean trigramsReady = true;
+    private volatile Snapshot snapshot;
+    private volatile boolean changed;
 
-    private ConcurrentHashMap<String, Set<Path>> fileGroups;
-    private ConcurrentHashMap<IndexedFile, Set<IndexedFile>> dirs;
+    /**
+     * The version of the next snapshot. Guarded by the write lock.
+     */
+    private long version;
+
+    /**
+     * The subtrees being reindexed, if any. Guarded by the write lock.
+     */
+    private Reindex reindex;
+
+    /**
+     * The last dictionary built by a fuzzy query, if any, with the ids of the names used or dropped since it was
+     * taken. The ids are only ever appended to, until a new dictionary is taken or there are too many of them;
+     * either bumps the generation. Guarded by the write lock.
+     */
+    private NameDictionary dictionary;
+    private int[] renamed = new int[16];
+    private int renamedCount;
+    private long dictionaryGeneration;
 
     public FileIndexer() {
-        crawler = new FileCrawler(this);
+        this(FileCrawler.Mode.WATCH);
+    }
+
+    public FileIndexer(FileCrawler.Mode crawlerMode) {
+        crawler = new FileCrawler(this, crawlerMode);
+        journal = new IndexJournal(FileIndexSerializer.JOURNAL);
+        persistent = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
         init();
     }
 
-    private static String name(Path path) {
-        Path name = path.getFileName();
-        return name == null ? "" : name.toString();
+    /**
+     * An indexer of {@code t}, whose trigrams are in {@code names} (see {@link #newTable(TrigramIndex)}), kept in
+     * memory only: nothing is loaded from or saved to disk, changes are not journaled and the crawler is not
+     * started. Snapshots are retired, and trigrams of dropped names removed, as new snapshots are taken rather than
+     * by a thread of their own. Meant for benchmarks and tools working on an index of their own.
+     */
+    FileIndexer(NodeTable t, TrigramIndex names, FileCrawler.Mode crawlerMode, long updateIntervalMillis) {
+        crawler = new FileCrawler(this, crawlerMode, updateIntervalMillis);
+        journal = new IndexJournal(null);
+        persistent = false;
+        // not shared yet, so queries find the indexes ready.
+        t.buildSortedIndexes();
+        install(t, names);
+    }
+
+    FileCrawler getCrawler() {
+        return crawler;
     }
 
     private void init() {
@@ -37,6 +148,9 @@ public final class FileIndexer {
             if (!loadFromDisk()) {
                 index(FileSystems.getDefault().getRootDirectories());
             }
+            final Thread t = new Thread(this::maintainJournal);
+            t.setDaemon(true);
+            t.start();
             crawler.start();
         } catch (Throwable e) {
             System.err.println("index job failed. (due to : " + e.getCause() + ")\n");
@@ -46,131 +160,1252 @@ public final class FileIndexer {
         }
     }
 
+    /**
+     * Builds a new index of {@code roots} and then replaces the current one with it at once; until then, queries
+     * see the current index.
+     */
     public void index(Iterable<Path> roots) {
-        fileGroups = new ConcurrentHashMap<>();
-        dirs = new ConcurrentHashMap<>();
         System.out.print("\nwaiting for index job ... ");
-        new SearchProcess(roots, this::group).doProcess();
+        final TrigramIndex names = new TrigramIndex();
+        final NodeTable t = crawl(roots, names);
         System.out.println("done.\n");
+        install(t, names);
+        checkpoint();
+    }
+
+    /**
+     * Crawls {@code dirs} again and then brings their part of the index in line with what was found, at once:
+     * entries that are gone are removed and new or changed ones are indexed. The subtrees are crawled into a table
+     * of their own, so queries see the index as it was before until then, and only the entries that differ are
+     * written to the index. Changes the crawler makes meanwhile to entries in these subtrees are kept, as they are
+     * newer than what was crawled.
+     */
+    public synchronized void reindex(Iterable<Path> dirs) {
+        final Reindex r = new Reindex(dirs);
+        lock.writeLock().lock();
+        try {
+            reindex = r;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        final List<Path> newDirs = new ArrayList<>();
+        try {
+            final NodeTable staged = crawl(dirs, null);
+            lock.writeLock().lock();
+            try {
+                for (Path dir : r.roots) {
+                    merge(staged, dir, r, newDirs);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                reindex = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        crawler.registerAll(newDirs);
+    }
+
+    /**
+     * Crawls {@code roots} into a new table, keeping the trigrams of its names in {@code names} if not
+     * {@code null}.
+     */
+    private NodeTable crawl(Iterable<Path> roots, TrigramIndex names) {
+        final NodeTable t = names != null ? newTable(names) : new NodeTable();
+        // mounts may have changed since the last crawl.
+        final Devices d = devices = Devices.load();
+        new SearchProcess(roots, (List<Path> paths, List<BasicFileAttributes> attributes) -> {
+            synchronized (t) {
+                for (int i = 0; i < paths.size(); i++) {
+                    add(t, paths.get(i), attributes.get(i));
+                }
+            }
+        }, exclusions, d).doProcess();
+        return t;
+    }
+
+    /**
+     * Returns an empty table whose names keep their trigrams in {@code names} as they are used and dropped.
+     */
+    static NodeTable newTable(TrigramIndex names) {
+        final NodeTable t = new NodeTable();
+        t.setListener(new NodeTable.Listener() {
+            @Override
+            public void nameUsed(int nameId) {
+                names.add(nameId, t.names().name(nameId));
+            }
+
+            @Override
+            public void nameUnused(int nameId) {
+                names.remove(nameId, t.names().name(nameId));
+            }
+        });
+        return t;
+    }
+
+    /**
+     * Makes the subtree of {@code dir} look like it does in {@code staged}, leaving out the entries
+     * {@link Reindex#isStale stale} in there. Called under the write lock.
+     */
+    private void merge(NodeTable staged, Path dir, Reindex r, List<Path> newDirs) {
+        final NodeTable t = table;
+        final int stagedRoot = staged.lookup(dir);
+        if (stagedRoot != NodeTable.NONE) {
+            staged.forEachInTree(stagedRoot, s -> {
+                if (!staged.isGrouped(s)) {
+                    return;
+                }
+                final Path path = staged.getPath(s);
+                final int id = t.lookup(path);
+                if (r.isStale(path) || id != NodeTable.NONE && t.isGrouped(id) && sameEntry(t, id, staged, s)) {
+                    return;
+                }
+                final byte a = staged.getAttributes(s);
+                final boolean wasDirectory = id != NodeTable.NONE && t.isDirectory(id);
+                if (t.add(path, a, staged.getLastModified(s), staged.getSize(s), staged.getCreationTime(s),
+                        staged.getMode(s)) != NodeTable.NONE) {
+                    cache.invalidate(path, QueryCache.ENTRY);
+                    journal.group(path, a, staged.getLastModified(s), staged.getSize(s), staged.getCreationTime(s),
+                            staged.getMode(s));
+                    changed = true;
+                    if ((a & NodeTable.DIRECTORY) != 0 && !wasDirectory) {
+                        newDirs.add(path);
+                    }
+                }
+            });
+        }
+        final int root = t.lookup(dir);
+        if (root == NodeTable.NONE) {
+            return;
+        }
+        final List<Path> gone = new ArrayList<>();
+        t.forEachInTree(root, id -> {
+            if (t.isGrouped(id)) {
+                final Path path = t.getPath(id);
+                final int s = staged.lookup(path);
+                if ((s == NodeTable.NONE || !staged.isGrouped(s)) && !r.touched.contains(path)) {
+                    gone.add(path);
+                }
+            }
+        });
+        for (Path path : gone) {
+            // gone with a parent removed before.
+            final int id = t.lookup(path);
+            if (id != NodeTable.NONE) {
+                cache.invalidate(path, removal(t, id));
+                t.remove(id);
+                journal.remove(path);
+                changed = true;
+            }
+        }
+    }
+
+    private static boolean sameEntry(NodeTable t, int id, NodeTable staged, int s) {
+        return t.getAttributes(id) == staged.getAttributes(s)
+                && t.getLastModified(id) == staged.getLastModified(s)
+                && t.getSize(id) == staged.getSize(s)
+                && t.getCreationTime(id) == staged.getCreationTime(s)
+                && t.getMode(id) == staged.getMode(s);
+    }
+
+    /**
+     * Returns the rules of what is neither indexed nor crawled.
+     */
+    public ExclusionRules getExclusionRules() {
+        return exclusions;
+    }
+
+    /**
+     * Returns the devices as of the last crawl.
+     */
+    public Devices getDevices() {
+        return devices;
     }
 
     public boolean loadFromDisk() {
+        lock.writeLock().lock();
+        try {
+            return load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean load() {
+        final NodeTable mapped = FileIndexSerializer.mapIndex();
+        if (mapped != null) {
+            try {
+                journal.replay(mapped);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            for (Path path : dropExcluded(mapped)) {
+                journal.remove(path);
+            }
+            install(mapped, null);
+            return true;
+        }
         final FileIndexWrapper index = FileIndexSerializer.deserializeIndex();
         if (index != null) {
-            fileGroups = index.getFileGroups();
-            dirs = index.getDirs();
+            final NodeTable t = new NodeTable();
+            index.getFileGroups().forEach((name, group) -> group.forEach(path -> {
+                final BasicFileAttributes attributes = FileUtils.readAttributes(path);
+                if (attributes != null) {
+                    add(t, path, attributes);
+                }
+            }));
+            dropExcluded(t);
+            install(t, null);
+            if (checkpoint()) {
+                FileIndexSerializer.deleteLegacyIndex();
+            }
             return true;
         }
         return false;
     }
 
+    /**
+     * Removes from {@code t} every entry that the exclusion rules or the devices leave out now, with everything
+     * below it, so that an index saved under other rules or mounts costs no watch, poll or memory for them. Only
+     * directories are looked at unless some rule can exclude a file, and nothing below an excluded directory is.
+     * Returns the paths removed.
+     */
+    private List<Path> dropExcluded(NodeTable t) {
+        final Devices d = devices;
+        final boolean files = exclusions.excludesFiles();
+        final List<Integer> excluded = new ArrayList<>();
+        final ArrayDeque<Integer> dirs = new ArrayDeque<>();
+        for (int id = 0; id < t.size(); id++) {
+            if (t.isLive(id) && t.getParent(id) == NodeTable.NONE) {
+                dirs.push(id);
+            }
+        }
+        while (!dirs.isEmpty()) {
+            final int dir = dirs.pop();
+            final Path path = t.getPath(dir);
+            if (t.isGrouped(dir) && (exclusions.excludes(path, true) || !d.crossesInto(path))) {
+                excluded.add(dir);
+                continue;
+            }
+            t.forEachChild(dir, c -> {
+                // nodes that are not entries themselves are on the way to some.
+                if (t.isDirectory(c) || !t.isGrouped(c)) {
+                    dirs.push(c);
+                } else if (files && exclusions.excludes(t.getPath(c), false)) {
+                    excluded.add(c);
+                }
+            });
+        }
+        final List<Path> removed = new ArrayList<>(excluded.size());
+        for (int id : excluded) {
+            removed.add(t.getPath(id));
+            // none is below another, so none is gone with the ones before it.
+            t.remove(id);
+        }
+        return removed;
+    }
+
+    /**
+     * Makes every change so far durable. Only the journal is forced to disk, unless there is no index file yet
+     * or the journal is due for a checkpoint.
+     */
     public void saveToDisk() {
-        FileIndexSerializer.serializeIndex(new FileIndexWrapper(fileGroups, dirs));
+        if (!persistent) {
+            return;
+        }
+        if (!FileIndexSerializer.hasIndex() || journal.size() >= CHECKPOINT_THRESHOLD_BYTES) {
+            lock.readLock().lock();
+            try {
+                if (FileIndexSerializer.serializeIndex(table)) {
+                    journal.reset();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        } else {
+            System.out.print("\nsaving index journal ... ");
+            journal.sync();
+            System.out.println("done.\n");
+        }
     }
 
-    public void forEachGroup(BiConsumer<String, Set<Path>> action) {
-        fileGroups.forEach(action);
+    /**
+     * Writes the index file anew and empties the journal, returning whether the index file was written.
+     */
+    private boolean checkpoint() {
+        if (!persistent) {
+            return false;
+        }
+        // writers are held off by the read lock, so no record can slip in between the checkpoint and the reset.
+        lock.readLock().lock();
+        try {
+            if (FileIndexSerializer.writeIndex(table)) {
+                journal.reset();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public void forEachDir(BiConsumer<IndexedFile, Set<IndexedFile>> action) {
-        dirs.forEach(action);
+    private void maintainJournal() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(JOURNAL_FLUSH_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            dropTrigrams();
+            if (journal.size() >= CHECKPOINT_THRESHOLD_BYTES) {
+                checkpoint();
+            } else {
+                try {
+                    journal.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
     }
 
-    public Set<Path> getGroup(Path path) {
-        return fileGroups.get(name(path));
+    /**
+     * Replaces the table with {@code t}, whose trigrams are in {@code names}, or are yet to be indexed if
+     * {@code null}.
+     */
+    private void install(final NodeTable t, TrigramIndex names) {
+        final TrigramIndex ti = names != null ? names : new TrigramIndex();
+        lock.writeLock().lock();
+        try {
+            table = t;
+            trigrams = ti;
+            droppedNames.clear();
+            trigramsReady = names != null || t.names().size() == 0;
+            dictionary = null;
+            renamedCount = 0;
+            dictionaryGeneration++;
+            cache.clear();
+            t.setListener(new NodeTable.Listener() {
+                @Override
+                public void nameUsed(int nameId) {
+                    ti.add(nameId, t.names().name(nameId));
+                    renamed(nameId);
+                }
+
+                @Override
+                public void nameUnused(int nameId) {
+                    droppedNames.addLast(new DroppedName(nameId, t.names().name(nameId), version));
+                    renamed(nameId);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!trigramsReady || !t.hasSortedIndexes()) {
+            final Thread thread = new Thread(() -> {
+                indexNames(t, ti);
+                indexMetadata(t);
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
     }
 
-    public Set<IndexedFile> getChildren(IndexedFile dir) {
-        return dirs.get(dir);
+    /**
+     * Records that name {@code nameId} was used or dropped, for the next dictionary; past {@link #MAX_RENAMED}
+     * names, the next fuzzy query rather builds one from scratch. Called under the write lock.
+     */
+    private void renamed(int nameId) {
+        if (renamedCount == MAX_RENAMED) {
+            dictionary = null;
+            renamedCount = 0;
+            dictionaryGeneration++;
+        }
+        if (renamedCount == renamed.length) {
+            renamed = Arrays.copyOf(renamed, renamedCount << 1);
+        }
+        renamed[renamedCount++] = nameId;
     }
 
-    public long getLastModified(Path path) {
-        return IndexedFile.index(path).getLastModified();
+    /**
+     * Builds the trigram index of a table that was loaded as a whole. Names are taken in batches, so that the
+     * crawler is not blocked meanwhile; names used or dropped in between are handled by the table listener.
+     */
+    private void indexNames(NodeTable t, TrigramIndex ti) {
+        if (trigramsReady) {
+            return;
+        }
+        final NameTable names = t.names();
+        for (int from = 0; ; from += NAME_BATCH_SIZE) {
+            lock.readLock().lock();
+            try {
+                if (table != t) {
+                    return;
+                }
+                final int to = Math.min(from + NAME_BATCH_SIZE, names.size());
+                for (int nameId = from; nameId < to; nameId++) {
+                    if (names.getFirstNode(nameId) != NameTable.NONE) {
+                        ti.add(nameId, names.name(nameId));
+                    }
+                }
+                if (to == names.size()) {
+                    trigramsReady = true;
+                    // the next query takes a snapshot that can use the trigrams.
+                    changed = true;
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
     }
 
-    public void setLastModified(Path path) {
-        IndexedFile.index(path, System.currentTimeMillis());
+    /**
+     * Builds the size and modification time indexes of a table that was loaded as a whole. Writers wait meanwhile,
+     * queries do not; until the indexes are there, range predicates are checked entry by entry.
+     */
+    private void indexMetadata(NodeTable t) {
+        lock.readLock().lock();
+        try {
+            if (table == t) {
+                t.buildSortedIndexes();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public void group(Path file) {
-        groupName(file);
-        groupChildren(file);
+    /**
+     * Returns a snapshot of the table for a query, to be given back to {@link #release(Snapshot)}. A query waits
+     * for the write lock only if there is no usable snapshot of the current table at all.
+     */
+    private Snapshot acquire() {
+        while (true) {
+            final Snapshot s = snapshot;
+            if (s == null || s.source != table || s.readers.get() < 0) {
+                lock.writeLock().lock();
+            } else if (!changed || !lock.writeLock().tryLock()) {
+                if (s.readers.getAndIncrement() >= 0) {
+                    return s;
+                }
+                // retired meanwhile.
+                continue;
+            }
+            try {
+                final Snapshot published = publish();
+                published.readers.incrementAndGet();
+                return published;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static void release(Snapshot s) {
+        s.readers.decrementAndGet();
     }
 
-    private void groupName(Path path) {
-        final String fileName = name(path);
-        Set<Path> group = fileGroups.get(fileName);
-        if (group == null) {
-            final Set<Path> g = fileGroups.putIfAbsent(fileName, group = new SetFromMap<>());
-            if (g != null) {
-                group = g;
+    /**
+     * Returns the current snapshot, after taking a new one if the table changed since. Called under the write lock.
+     */
+    private Snapshot publish() {
+        Snapshot s = snapshot;
+        if (s == null || s.source != table || s.readers.get() < 0 || changed) {
+            s = new Snapshot(table, table.snapshot(), version++, trigrams, trigramsReady, dictionary,
+                    // only copied while fuzzy queries keep a dictionary; else they are not needed.
+                    dictionary != null ? Arrays.copyOf(renamed, renamedCount) : null, renamedCount,
+                    dictionaryGeneration, cache.sequence());
+            snapshots.addLast(s);
+            snapshot = s;
+            changed = false;
+            if (!persistent) {
+                // no thread maintains an indexer kept in memory only, which would keep it alive.
+                dropTrigrams();
             }
         }
-        group.add(path);
+        return s;
     }
 
-    private void groupChildren(Path path) {
-        final IndexedFile indexedFile = IndexedFile.index(path, System.currentTimeMillis());
-        if (Files.isDirectory(path) && !dirs.containsKey(indexedFile)) {
-            dirs.put(indexedFile, new SetFromMap<>());
+    /**
+     * Retires the snapshots no query uses any more, oldest first, and removes the trigrams of the names dropped
+     * before the oldest snapshot still in use was taken. The current snapshot is only retired if dropped names
+     * wait for it, since the next query then has to wait for the write lock to take a new one.
+     */
+    private void dropTrigrams() {
+        lock.writeLock().lock();
+        try {
+            for (Snapshot s; (s = snapshots.peekFirst()) != null; snapshots.pollFirst()) {
+                final boolean waitedFor = !droppedNames.isEmpty() && droppedNames.peekFirst().version > s.version;
+                if (s == snapshot && !waitedFor || !s.readers.compareAndSet(0, RETIRED)) {
+                    break;
+                }
+            }
+            final long oldest = snapshots.isEmpty() ? version : snapshots.peekFirst().version;
+            final NameTable names = table.names();
+            while (!droppedNames.isEmpty() && droppedNames.peekFirst().version <= oldest) {
+                final DroppedName dropped = droppedNames.pollFirst();
+                // the id may have been given to another name since.
+                final String name = names.getFirstNode(dropped.nameId) != NameTable.NONE
+                        ? names.name(dropped.nameId) : null;
+                trigrams.remove(dropped.nameId, dropped.name, name);
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
-        final Path parent = path.getParent();
-        if (parent != null) {
-            final IndexedFile p = IndexedFile.index(parent);
-            Set<IndexedFile> children = dirs.get(p);
-            if (children == null) {
-                final Set<IndexedFile> ch = dirs.putIfAbsent(p, children = new SetFromMap<>());
-                if (ch != null) {
-                    children = ch;
+    }
+
+    public void forEachDir(BiConsumer<IndexedFile, List<IndexedFile>> action) {
+        forEachDir(dir -> true, action);
+    }
+
+    /**
+     * Passes every indexed directory accepted by {@code filter} to {@code action}, together with its indexed
+     * entries.
+     */
+    public void forEachDir(Predicate<Path> filter, BiConsumer<IndexedFile, List<IndexedFile>> action) {
+        final NodeTable t;
+        final int[] ids;
+        lock.readLock().lock();
+        try {
+            t = table;
+            ids = IntStream.range(0, t.size()).filter(t::isDirectory).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int id : ids) {
+            final IndexedFile dir;
+            final List<IndexedFile> children;
+            lock.readLock().lock();
+            try {
+                if (table != t || !t.isDirectory(id)) {
+                    continue;
+                }
+                final Path path = t.getPath(id);
+                if (!filter.test(path)) {
+                    continue;
                 }
+                dir = new IndexedFile(path, t.getLastModified(id));
+                children = children(t, id);
+            } finally {
+                lock.readLock().unlock();
             }
-            children.add(indexedFile);
+            action.accept(dir, children);
         }
     }
 
-    public void removeFile(Path path) {
-        removeGroup(path);
-        removeChildren(path);
+    /**
+     * Returns the indexed entries of directory {@code dir}, or {@code null} if it is not an indexed directory.
+     */
+    public List<IndexedFile> getChildren(Path dir) {
+        lock.readLock().lock();
+        try {
+            final NodeTable t = table;
+            final int id = t.lookup(dir);
+            return id == NodeTable.NONE || !t.isDirectory(id) ? null : children(t, id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<IndexedFile> children(NodeTable t, int id) {
+        final List<IndexedFile> children = new ArrayList<>();
+        t.forEachChild(id, child -> {
+            if (t.isGrouped(child)) {
+                children.add(new IndexedFile(t.getPath(child), t.getLastModified(child)));
+            }
+        });
+        return children;
+    }
+
+    public boolean isDirectory(Path path) {
+        lock.readLock().lock();
+        try {
+            final NodeTable t = table;
+            final int id = t.lookup(path);
+            return id != NodeTable.NONE && t.isDirectory(id);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    private void removeGroup(Path path) {
-        final Set<Path> group = fileGroups.get(name(path));
-        if (group != null) {
-            group.remove(path);
+    public long getLastModified(Path path) {
+        lock.readLock().lock();
+        try {
+            final NodeTable t = table;
+            final int id = t.lookup(path);
+            return id == NodeTable.NONE || !t.isGrouped(id) ? 0L : t.getLastModified(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Refreshes the metadata of an indexed entry, or removes it if it is gone.
+     */
+    public void update(Path path) {
+        final BasicFileAttributes attributes = FileUtils.readAttributes(path);
+        if (attributes != null) {
+            update(path, attributes);
+        } else {
+            remove(path);
         }
     }
 
-    private void removeChildren(Path path) {
-        final Path parent = path.getParent();
-        if (parent != null) {
-            final Set<IndexedFile> children = dirs.get(IndexedFile.index(parent));
-            if (children != null) {
-                children.remove(IndexedFile.index(path));
+    /**
+     * Refreshes the metadata of an indexed entry with attributes the caller has already read.
+     */
+    public void update(Path path, BasicFileAttributes attributes) {
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        final long creationTime = attributes.creationTime().toMillis();
+        final int mode = FileUtils.mode(attributes);
+        lock.writeLock().lock();
+        try {
+            final NodeTable t = table;
+            final int id = t.lookup(path);
+            if (id != NodeTable.NONE && t.isGrouped(id)) {
+                t.update(id, lastModified, attributes.size(), creationTime, mode);
+                cache.invalidate(path, QueryCache.METADATA);
+                touched(path, false);
+                changed = true;
+                journal.update(path, lastModified, attributes.size(), creationTime, mode);
             }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
-    public void removeDir(IndexedFile dir) {
-        final Set<IndexedFile> children = dirs.remove(dir);
-        if (children != null) {
-            for (IndexedFile child : children) {
-                if (Files.isDirectory(child.getPath())) {
-                    removeDir(child);
-                } else {
-                    removeFile(child.getPath());
+    public void group(Path file) {
+        final BasicFileAttributes attributes = FileUtils.readAttributes(file);
+        if (attributes != null) {
+            group(file, attributes);
+        }
+    }
+
+    /**
+     * Indexes {@code file} with attributes the caller has already read, so they are not read again.
+     */
+    public void group(Path file, BasicFileAttributes attributes) {
+        group(file, attributes, true);
+    }
+
+    private void group(Path file, BasicFileAttributes attributes, boolean journaled) {
+        final byte a = attributes(file, attributes);
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        final long creationTime = attributes.creationTime().toMillis();
+        final int mode = FileUtils.mode(attributes);
+        lock.writeLock().lock();
+        try {
+            if (table.add(file, a, lastModified, attributes.size(), creationTime, mode) != NodeTable.NONE) {
+                cache.invalidate(file, QueryCache.ENTRY);
+                touched(file, false);
+                changed = true;
+                if (journaled) {
+                    journal.group(file, a, lastModified, attributes.size(), creationTime, mode);
                 }
             }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void add(NodeTable t, Path file, BasicFileAttributes attributes) {
+        t.add(file, attributes(file, attributes), attributes.lastModifiedTime().toMillis(), attributes.size(),
+                attributes.creationTime().toMillis(), FileUtils.mode(attributes));
+    }
+
+    private static byte attributes(Path path, BasicFileAttributes attributes) {
+        byte a = 0;
+        if (attributes.isDirectory()) {
+            a |= NodeTable.DIRECTORY;
+        }
+        if (attributes.isSymbolicLink()) {
+            a |= NodeTable.SYMBOLIC_LINK;
+        }
+        if (attributes.isRegularFile()) {
+            a |= NodeTable.REGULAR;
+        }
+        if (FileUtils.isHidden(path, attributes)) {
+            a |= NodeTable.HIDDEN;
+        }
+        return a;
+    }
+
+    public void removeFile(Path path) {
+        remove(path);
+    }
+
+    public void removeDir(Path dir) {
+        remove(dir);
+    }
+
+    private void remove(Path path) {
+        lock.writeLock().lock();
+        try {
+            final NodeTable t = table;
+            final int id = t.lookup(path);
+            if (id != NodeTable.NONE) {
+                cache.invalidate(path, removal(t, id));
+                t.remove(id);
+                touched(path, true);
+                changed = true;
+                journal.remove(path);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the kind of change {@link NodeTable#remove(int) removing} node {@code id} is to cached results: any
+     * node with children takes them along, whether it is indexed as a directory or not.
+     */
+    private static int removal(NodeTable t, int id) {
+        return t.getFirstChild(id) != NodeTable.NONE ? QueryCache.TREE : QueryCache.ENTRY;
+    }
+
+    /**
+     * Records a change the crawler made to {@code path}, for a reindex that may be running. Called under the write
+     * lock.
+     */
+    private void touched(Path path, boolean removed) {
+        if (reindex != null) {
+            reindex.record(path, removed);
         }
-        removeFile(dir.getPath());
     }
 
     public List<Path> find(FileMatcher matcher) {
-        return fileGroups.keySet().parallelStream()
-                .filter(matcher::matchFileName)
-                .flatMap(s -> fileGroups.get(s).stream())
-                .filter(matcher::matchDirectory)
-                .sorted()
-                .collect(Collectors.toList());
+        if (matcher.getNameMode() == NameMode.FUZZY) {
+            return cached(matcher, Integer.MAX_VALUE, s -> findClosest(s, matcher, Integer.MAX_VALUE));
+        }
+        return cached(matcher, Integer.MAX_VALUE, s -> {
+            final NodeTable t = s.table;
+            return matchingNodes(s, matcher)
+                    .parallel()
+                    .mapToObj(id -> match(t, id, matcher))
+                    .filter(Objects::nonNull)
+                    .sorted()
+                    .collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * Returns the first {@code limit} matches in path order. Every scan thread keeps a bounded max-heap of the
+     * smallest paths seen so far, so only paths that still make it into the heap are checked against the
+     * directories and nothing but the result is ever sorted.
+     */
+    public List<Path> find(FileMatcher matcher, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        if (matcher.getNameMode() == NameMode.FUZZY) {
+            return cached(matcher, limit, s -> findClosest(s, matcher, limit));
+        }
+        return cached(matcher, limit, s -> {
+            final NodeTable t = s.table;
+            final PriorityQueue<Path> top = matchingNodes(s, matcher)
+                    .parallel()
+                    .collect(() -> new PriorityQueue<>(Math.min(limit, 1 << 10) + 1, Comparator.reverseOrder()),
+                            (heap, id) -> {
+                                final Path path = t.getPath(id);
+                                if (fits(heap, path, limit) && matcher.matchDirectory(path, t.isHidden(id))) {
+                                    offer(heap, path, limit);
+                                }
+                            },
+                            (heap, other) -> other.forEach(path -> {
+                                if (fits(heap, path, limit)) {
+                                    offer(heap, path, limit);
+                                }
+                            }));
+            final List<Path> paths = new ArrayList<>(top);
+            paths.sort(null);
+            return paths;
+        });
+    }
+
+    /**
+     * Returns the result of {@code query} on a snapshot, which is taken from the cache if it is there, and else
+     * cached unless the index changed meanwhile in a way that may change it.
+     */
+    private List<Path> cached(FileMatcher matcher, int limit, Function<Snapshot, List<Path>> query) {
+        final QueryCache.Key key = QueryCache.key(matcher, limit);
+        if (key != null) {
+            final List<Path> cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final List<Path> result;
+        final Snapshot s = acquire();
+        try {
+            result = query.apply(s);
+        } finally {
+            release(s);
+        }
+        if (key != null) {
+            cache.put(key, result, s.cacheSequence);
+        }
+        return result;
+    }
+
+    private static boolean fits(PriorityQueue<Path> heap, Path path, int limit) {
+        return heap.size() < limit || path.compareTo(heap.peek()) < 0;
+    }
+
+    private static void offer(PriorityQueue<Path> heap, Path path, int limit) {
+        heap.offer(path);
+        if (heap.size() > limit) {
+            heap.poll();
+        }
+    }
+
+    /**
+     * Pushes the matches to {@code action} as they are found, in no particular order, and stops as soon as
+     * {@code action} returns {@code false}. The matches come from one snapshot however slow {@code action} is;
+     * the snapshot is held meanwhile, which keeps trigrams of names dropped since from being removed.
+     */
+    public void find(FileMatcher matcher, Predicate<Path> action) {
+        final Snapshot s = acquire();
+        try {
+            final NodeTable t = s.table;
+            for (PrimitiveIterator.OfInt it = matchingNodes(s, matcher).iterator(); it.hasNext(); ) {
+                final Path path = match(t, it.nextInt(), matcher);
+                if (path != null && !action.test(path)) {
+                    return;
+                }
+            }
+        } finally {
+            release(s);
+        }
+    }
+
+    /**
+     * Answers a batch of name queries with one sweep over the names, each name being run once through an
+     * {@link AhoCorasick} automaton of all {@code patterns}. Everything but the name is taken from
+     * {@code matcher}. Returns the matches of every pattern, in path order and in the order of {@code patterns}.
+     */
+    public List<List<Path>> findAll(List<String> patterns, FileMatcher matcher) {
+        final AhoCorasick automaton = new AhoCorasick(patterns, matcher.isCaseInsensitive());
+        final List<List<Path>> results = new ArrayList<>(patterns.size());
+        final Snapshot s = acquire();
+        try {
+            final NodeTable t = s.table;
+            final NameTable names = t.names();
+            final FileType type = matcher.getFileType();
+            final IntPredicate metadata = metadataFilter(t, matcher);
+            // (pattern, node) pairs, which sort by pattern.
+            final long[] hits = IntStream.range(0, names.size())
+                    .parallel()
+                    .filter(nameId -> names.getFirstNode(nameId) != NameTable.NONE)
+                    .boxed()
+                    .flatMapToLong(nameId -> {
+                        final int[] found = automaton.find(names, nameId);
+                        if (found.length == 0) {
+                            return LongStream.empty();
+                        }
+                        final LongStream.Builder group = LongStream.builder();
+                        t.forEachInGroup(nameId, id -> {
+                            if (matchType(type, t.getAttributes(id)) && metadata.test(id)) {
+                                for (int p : found) {
+                                    group.accept((long) p << 32 | id);
+                                }
+                            }
+                        });
+                        return group.build();
+                    })
+                    .toArray();
+            Arrays.parallelSort(hits);
+            for (int p = 0, from = 0; p < patterns.size(); p++) {
+                int to = from;
+                while (to < hits.length && (int) (hits[to] >>> 32) == p) {
+                    to++;
+                }
+                results.add(Arrays.stream(hits, from, to)
+                        .parallel()
+                        .mapToObj(hit -> match(t, (int) hit, matcher))
+                        .filter(Objects::nonNull)
+                        .sorted()
+                        .collect(Collectors.toList()));
+                from = to;
+            }
+        } finally {
+            release(s);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the {@code limit} matches of a {@link NameMode#FUZZY} query on {@code s} closest to its name, closest first and
+     * then in path order. The names are found by a walk over the {@link NameDictionary} of the snapshot, which
+     * lowers its bound to the distance of the worst match kept once there are {@code limit} of them, so the
+     * further the walk gets the more of the dictionary it skips.
+     */
+    private List<Path> findClosest(Snapshot s, FileMatcher matcher, int limit) {
+        final Comparator<Hit> order = Comparator.<Hit>comparingInt(hit -> hit.distance).thenComparing(hit -> hit.path);
+        final PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(limit, 1 << 10) + 1, order.reversed());
+        final NodeTable t = s.table;
+        final FileType type = matcher.getFileType();
+        final IntPredicate metadata = metadataFilter(t, matcher);
+        dictionary(s).walk(t.names(), automaton(matcher), (nameId, distance) -> {
+            t.forEachInGroup(nameId, id -> {
+                if (!matchType(type, t.getAttributes(id)) || !metadata.test(id)) {
+                    return;
+                }
+                final Hit hit = new Hit(distance, t.getPath(id));
+                if ((top.size() < limit || order.compare(hit, top.peek()) < 0)
+                        && matcher.matchDirectory(hit.path, t.isHidden(id))) {
+                    top.offer(hit);
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            });
+            return top.size() < limit ? Integer.MAX_VALUE : top.peek().distance;
+        });
+        final List<Hit> hits = new ArrayList<>(top);
+        hits.sort(order);
+        return hits.stream().map(hit -> hit.path).collect(Collectors.toList());
+    }
+
+    private static LevenshteinAutomaton automaton(FileMatcher matcher) {
+        return new LevenshteinAutomaton(matcher.getName(), matcher.getMaxEdits(), matcher.isCaseInsensitive());
+    }
+
+    /**
+     * Returns the dictionary of the names of snapshot {@code s}, merged from the one there was when it was taken
+     * or else built from scratch, and shared by the queries on {@code s}. It is kept for later snapshots too,
+     * unless the write lock is busy or a newer one was kept meanwhile.
+     */
+    private NameDictionary dictionary(Snapshot s) {
+        NameDictionary d = s.dictionary;
+        if (d != null) {
+            return d;
+        }
+        synchronized (s) {
+            if ((d = s.dictionary) != null) {
+                return d;
+            }
+            final NameTable names = s.table.names();
+            d = s.baseDictionary == null ? NameDictionary.build(names)
+                    : s.renamed.length == 0 ? s.baseDictionary : s.baseDictionary.merge(names, s.renamed);
+            s.dictionary = d;
+        }
+        if (lock.writeLock().tryLock()) {
+            try {
+                if (dictionaryGeneration == s.dictionaryGeneration && table == s.source) {
+                    // the names recorded before s was taken are in d already.
+                    System.arraycopy(renamed, s.renamedCount, renamed, 0, renamedCount - s.renamedCount);
+                    renamedCount -= s.renamedCount;
+                    dictionary = d;
+                    dictionaryGeneration++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return d;
+    }
+
+    private static Path match(NodeTable t, int id, FileMatcher matcher) {
+        final Path path = t.getPath(id);
+        return matcher.matchDirectory(path, t.isHidden(id)) ? path : null;
+    }
+
+    private static boolean matchType(FileType type, byte attributes) {
+        if (type == null) {
+            return true;
+        }
+        switch (type) {
+            case REGULAR:
+                return (attributes & NodeTable.REGULAR) != 0;
+            case DIRECTORY:
+                return (attributes & NodeTable.DIRECTORY) != 0;
+            case SYMBOLIC_LINK:
+                return (attributes & NodeTable.SYMBOLIC_LINK) != 0;
+            default:
+                return (attributes & (NodeTable.REGULAR | NodeTable.DIRECTORY | NodeTable.SYMBOLIC_LINK)) == 0;
+        }
+    }
+
+    /**
+     * Returns the indexed nodes matching everything but the directories of {@code matcher}. These are found
+     * either through their names or through one of the metadata ranges, whichever yields fewer candidates.
+     */
+    private IntStream matchingNodes(Snapshot s, FileMatcher matcher) {
+        final NodeTable t = s.table;
+        final FileType type = matcher.getFileType();
+        final IntPredicate metadata = metadataFilter(t, matcher);
+        final int[] ranged = rangedNodes(s, matcher);
+        if (ranged != null) {
+            final NameTable names = t.names();
+            return Arrays.stream(ranged)
+                    .filter(id -> matchType(type, t.getAttributes(id)) && metadata.test(id))
+                    .filter(id -> matcher.matchFileName(names.name(t.getNameId(id))));
+        }
+        return matchingNames(s, matcher).flatMap(nameId -> {
+            final IntStream.Builder group = IntStream.builder();
+            t.forEachInGroup(nameId, id -> {
+                if (matchType(type, t.getAttributes(id)) && metadata.test(id)) {
+                    group.accept(id);
+                }
+            });
+            return group.build();
+        });
+    }
+
+    private static IntPredicate metadataFilter(NodeTable t, FileMatcher matcher) {
+        final boolean size = matcher.hasSizeRange();
+        final boolean lastModified = matcher.hasLastModifiedRange();
+        if (!size && !lastModified) {
+            return id -> true;
+        }
+        final long minSize = matcher.getMinSize();
+        final long maxSize = matcher.getMaxSize();
+        final long minLastModified = matcher.getMinLastModified();
+        final long maxLastModified = matcher.getMaxLastModified();
+        return id -> (!size || t.getSize(id) >= minSize && t.getSize(id) <= maxSize)
+                && (!lastModified || t.getLastModified(id) >= minLastModified && t.getLastModified(id) <= maxLastModified);
+    }
+
+    /**
+     * Returns the nodes in the narrowest metadata range of {@code matcher}, or {@code null} if it has none or
+     * the name is more selective.
+     */
+    private int[] rangedNodes(Snapshot s, FileMatcher matcher) {
+        final NodeTable t = s.table;
+        if (!t.hasSortedIndexes() || !matcher.hasSizeRange() && !matcher.hasLastModifiedRange()) {
+            return null;
+        }
+        SortedIndex index = null;
+        long from = 0L;
+        long to = 0L;
+        int count = Integer.MAX_VALUE;
+        if (matcher.hasSizeRange()) {
+            index = t.sizeIndex();
+            from = matcher.getMinSize();
+            to = matcher.getMaxSize();
+            count = index.count(from, to);
+        }
+        if (matcher.hasLastModifiedRange()) {
+            final SortedIndex byLastModified = t.lastModifiedIndex();
+            final int c = byLastModified.count(matcher.getMinLastModified(), matcher.getMaxLastModified());
+            if (c < count) {
+                index = byLastModified;
+                from = matcher.getMinLastModified();
+                to = matcher.getMaxLastModified();
+                count = c;
+            }
+        }
+        final int[] candidates = candidates(s, matcher);
+        if (candidates != null && candidates.length < count) {
+            return null;
+        }
+        return index.range(from, to);
+    }
+
+    private IntStream matchingNames(Snapshot s, FileMatcher matcher) {
+        final NameTable names = s.table.names();
+        if (matcher.getNameMode() == NameMode.FUZZY) {
+            final IntStream.Builder matching = IntStream.builder();
+            dictionary(s).walk(names, automaton(matcher), (nameId, distance) -> {
+                matching.accept(nameId);
+                return Integer.MAX_VALUE;
+            });
+            return matching.build();
+        }
+        final byte[][] literals = literals(matcher);
+        final boolean folded = isFolded(matcher);
+        final int[] candidates = candidates(s, matcher);
+        return (candidates != null ? Arrays.stream(candidates) : IntStream.range(0, names.size()))
+                // the trigram index may already have names added after the snapshot was taken.
+                .filter(nameId -> nameId < names.size() && names.getFirstNode(nameId) != NameTable.NONE)
+                .filter(nameId -> containsAll(names, nameId, literals, folded))
+                .filter(nameId -> matcher.matchFileName(names.name(nameId)));
+    }
+
+    /**
+     * Returns the ids of the names that may match {@code matcher} in snapshot {@code s}, or {@code null} if the
+     * trigram index can not tell and all names have to be scanned.
+     */
+    private int[] candidates(Snapshot s, FileMatcher matcher) {
+        final boolean folded = isFolded(matcher);
+        if (matcher.isCaseInsensitive() && !folded || !s.trigramsReady) {
+            return null;
+        }
+        // the rarest of the required literals; intersecting them all rarely pays off.
+        int[] candidates = null;
+        for (String literal : matcher.getRequiredLiterals()) {
+            final int[] c = folded ? s.trigrams.foldedCandidates(CaseFolding.fold(literal))
+                    : s.trigrams.candidates(literal);
+            if (c != null && (candidates == null || c.length < candidates.length)) {
+                candidates = c;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Tells whether the names matching {@code matcher} are those whose {@link CaseFolding folded} form contains
+     * the folded name, which the name table and the trigram index both keep.
+     */
+    private static boolean isFolded(FileMatcher matcher) {
+        return matcher.isCaseInsensitive() && matcher.getNameMode() == NameMode.LITERAL;
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the literals every matching name contains, which are checked in the name table
+     * before names are decoded; folded if {@link #isFolded(FileMatcher)}, and none if the match is otherwise case
+     * insensitive.
+     */
+    private static byte[][] literals(FileMatcher matcher) {
+        final boolean folded = isFolded(matcher);
+        if (matcher.isCaseInsensitive() && !folded) {
+            return new byte[0][];
+        }
+        final List<String> literals = matcher.getRequiredLiterals();
+        final byte[][] bytes = new byte[literals.size()][];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (folded ? CaseFolding.fold(literals.get(i)) : literals.get(i)).getBytes(UTF_8);
+        }
+        return bytes;
+    }
+
+    private static boolean containsAll(NameTable names, int nameId, byte[][] literals, boolean folded) {
+        for (byte[] literal : literals) {
+            if (!(folded ? names.containsFolded(nameId, literal) : names.contains(nameId, literal))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A read-only copy of the table, shared by the queries started while the table did not change.
+     */
+    private static final class Snapshot {
+
+        private final NodeTable source;
+        private final NodeTable table;
+        private final long version;
+        private final TrigramIndex trigrams;
+        private final boolean trigramsReady;
+
+        /**
+         * The dictionary there was when this snapshot was taken, and the names used or dropped since then up to
+         * this snapshot, which are the first {@link #renamedCount} of its generation.
+         */
+        private final NameDictionary baseDictionary;
+        private final int[] renamed;
+        private final int renamedCount;
+        private final long dictionaryGeneration;
+
+        /**
+         * The number of the first change to the table after this snapshot was taken, for {@link QueryCache}.
+         */
+        private final long cacheSequence;
+
+        /**
+         * The dictionary of this snapshot, once a fuzzy query needed it.
+         */
+        private volatile NameDictionary dictionary;
+
+        /**
+         * The number of queries running on this snapshot, or {@link #RETIRED} once it may no longer be used.
+         */
+        private final AtomicInteger readers = new AtomicInteger();
+
+        private Snapshot(NodeTable source, NodeTable table, long version, TrigramIndex trigrams,
+                         boolean trigramsReady, NameDictionary baseDictionary, int[] renamed, int renamedCount,
+                         long dictionaryGeneration, long cacheSequence) {
+            this.source = source;
+            this.table = table;
+            this.version = version;
+            this.trigrams = trigrams;
+            this.trigramsReady = trigramsReady;
+            this.baseDictionary = baseDictionary;
+            this.renamed = renamed;
+            this.renamedCount = renamedCount;
+            this.dictionaryGeneration = dictionaryGeneration;
+            this.cacheSequence = cacheSequence;
+        }
+
+    }
+
+    private static final class Hit {
+
+        private final int distance;
+        private final Path path;
+
+        private Hit(int distance, Path path) {
+            this.distance = distance;
+            this.path = path;
+        }
+
+    }
+
+    private static final class DroppedName {
+
+        private final int nameId;
+        private final String name;
+
+        /**
+         * The version of the first snapshot without the name.
+         */
+        private final long version;
+
+        private DroppedName(int nameId, String name, long version) {
+            this.nameId = nameId;
+            this.name = name;
+            this.version = version;
+        }
+
+    }
+
+    /**
+     * The subtrees being reindexed, and the changes the crawler made to them meanwhile.
+     */
+    private static final class Reindex {
+
+        private final List<Path> roots = new ArrayList<>();
+        private final Set<Path> touched = new HashSet<>();
+        private final Set<Path> removed = new HashSet<>();
+
+        private Reindex(Iterable<Path> dirs) {
+            dirs.forEach(roots::add);
+        }
+
+        private void record(Path path, boolean removed) {
+            for (Path root : roots) {
+                if (path.startsWith(root)) {
+                    touched.add(path);
+                    if (removed) {
+                        this.removed.add(path);
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Whether the crawler changed {@code path}, or removed it or one of its parents, after it was crawled.
+         */
+        private boolean isStale(Path path) {
+            if (touched.contains(path)) {
+                return true;
+            }
+            if (!removed.isEmpty()) {
+                for (Path p = path.getParent(); p != null; p = p.getParent()) {
+                    if (removed.contains(p)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
     }
 
 }
@@ -0,0 +1,231 @@
+package com.file.search.indexing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only log of the changes made to the index since the last checkpoint (the index file).
+ * Every record sets or removes a single path, so replaying a journal over a checkpoint that already contains
+ * some of its records is harmless. A torn record at the end (e.g. after a crash) ends the replay and is cut off.
+ * <p>
+ * Record layout (big-endian): {@code byte op, byte attributes, long lastModified, long size, long creationTime,
+ * int mode, int length, byte[length] path (UTF-8)}.
+ * <p>
+ * A journal without a file encodes its records the same way but drops them when flushed, for an index kept in
+ * memory only.
+ *
+ * @author ahmad
+ */
+final class IndexJournal {
+
+    private static final byte GROUP = 1;
+    private static final byte REMOVE = 2;
+    private static final byte UPDATE = 3;
+
+    private static final int RECORD_HEADER_SIZE = 34;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private FileChannel channel;
+    private boolean failed;
+
+    IndexJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Applies the journal to {@code table}, and cuts off a torn record at the end if there is one.
+     */
+    synchronized void replay(NodeTable table) throws IOException {
+        flush();
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        long valid = 0L;
+        try (FileChannel ch = FileChannel.open(file, READ, WRITE);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), BUFFER_SIZE))) {
+            try {
+                while (true) {
+                    final byte op = in.readByte();
+                    final byte attributes = in.readByte();
+                    final long lastModified = in.readLong();
+                    final long size = in.readLong();
+                    final long creationTime = in.readLong();
+                    final int mode = in.readInt();
+                    final int length = in.readInt();
+                    if (op < GROUP || op > UPDATE || length < 0 || length > BUFFER_SIZE) {
+                        break;
+                    }
+                    final byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    apply(table, op, attributes, Paths.get(new String(bytes, UTF_8)),
+                            lastModified, size, creationTime, mode);
+                    valid += RECORD_HEADER_SIZE + length;
+                }
+            } catch (EOFException ignored) {
+            }
+            if (valid < ch.size()) {
+                ch.truncate(valid);
+            }
+        }
+        if (channel != null) {
+            channel.position(channel.size());
+        }
+    }
+
+    private static void apply(NodeTable table, byte op, byte attributes, Path path,
+                              long lastModified, long size, long creationTime, int mode) {
+        if (op == GROUP) {
+            table.add(path, attributes, lastModified, size, creationTime, mode);
+            return;
+        }
+        final int id = table.lookup(path);
+        if (id == NodeTable.NONE) {
+            return;
+        }
+        if (op == REMOVE) {
+            table.remove(id);
+        } else if (table.isGrouped(id)) {
+            table.update(id, lastModified, size, creationTime, mode);
+        }
+    }
+
+    void group(Path path, byte attributes, long lastModified, long size, long creationTime, int mode) {
+        append(GROUP, attributes, path, lastModified, size, creationTime, mode);
+    }
+
+    void remove(Path path) {
+        append(REMOVE, (byte) 0, path, 0L, 0L, 0L, 0);
+    }
+
+    void update(Path path, long lastModified, long size, long creationTime, int mode) {
+        append(UPDATE, (byte) 0, path, lastModified, size, creationTime, mode);
+    }
+
+    private synchronized void append(byte op, byte attributes, Path path,
+                                     long lastModified, long size, long creationTime, int mode) {
+        if (failed) {
+            return;
+        }
+        final byte[] bytes = path.toString().getBytes(UTF_8);
+        if (bytes.length > BUFFER_SIZE - RECORD_HEADER_SIZE) {
+            return;
+        }
+        try {
+            if (buffer.remaining() < RECORD_HEADER_SIZE + bytes.length) {
+                flush();
+            }
+            buffer.put(op).put(attributes).putLong(lastModified).putLong(size).putLong(creationTime).putInt(mode)
+                    .putInt(bytes.length).put(bytes);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Hands the buffered records to the file system, so they survive the process but not necessarily the machine.
+     */
+    synchronized void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        if (file == null) {
+            ((Buffer) buffer).clear();
+            return;
+        }
+        ((Buffer) buffer).flip();
+        try {
+            final FileChannel ch = channel();
+            while (buffer.hasRemaining()) {
+                ch.write(buffer);
+            }
+        } finally {
+            ((Buffer) buffer).clear();
+        }
+    }
+
+    /**
+     * Flushes the buffered records and forces them to the storage device.
+     */
+    synchronized void sync() {
+        if (failed) {
+            return;
+        }
+        try {
+            flush();
+            if (channel != null) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Drops every record, once they are all part of a new checkpoint.
+     */
+    synchronized void reset() {
+        ((Buffer) buffer).clear();
+        failed = false;
+        if (file == null) {
+            return;
+        }
+        try {
+            channel().truncate(0L);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    synchronized long size() {
+        if (file == null) {
+            return buffer.position();
+        }
+        try {
+            return channel().position() + buffer.position();
+        } catch (IOException e) {
+            return buffer.position();
+        }
+    }
+
+    synchronized void close() {
+        sync();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, CREATE, WRITE);
+            channel.position(channel.size());
+        }
+        return channel;
+    }
+
+    private void fail(IOException e) {
+        // keep indexing without a journal, the next checkpoint brings the index file up to date again.
+        failed = true;
+        ((Buffer) buffer).clear();
+        e.printStackTrace();
+    }
+
+}
@@ -7,7 +7,6 @@ import com.esotericsoftware.kryo.io.Output;
 
 import java.nio.file.Paths;
 
-import static com.file.search.indexing.IndexedFile.index;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
@@ -50,7 +49,7 @@ public final class IndexedFileSerializer extends Serializer<IndexedFile> {
     @Override
     public IndexedFile read(Kryo kryo, Input input, Class<IndexedFile> aClass) {
         byte[] bytes = kryo.readObject(input, byte[].class);
-        return index(Paths.get(new String(bytes, 8, bytes.length - 8, UTF_8)), fromByteArray(bytes));
+        return new IndexedFile(Paths.get(new String(bytes, 8, bytes.length - 8, UTF_8)), fromByteArray(bytes));
     }
 
 }
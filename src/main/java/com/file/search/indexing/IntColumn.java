@@ -0,0 +1,138 @@
+package com.file.search.indexing;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Growable {@code int} column stored in fixed-size chunks. Chunks are either heap arrays or private
+ * (copy-on-write) views of a mapped index file, so a mapped column is only copied page by page as it is written.
+ * <p>
+ * A {@link #snapshot()} shares the chunks of the column; a shared chunk is copied the first time the column
+ * writes to it afterwards, so a snapshot stays as it was taken while the column moves on.
+ *
+ * @author ahmad
+ */
+final class IntColumn {
+
+    static final int CHUNK_SHIFT = 13;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final int defaultValue;
+
+    private IntBuffer[] chunks = new IntBuffer[0];
+
+    /**
+     * Whether a chunk is also referenced by a snapshot, and so has to be copied before it is written.
+     */
+    private boolean[] shared = new boolean[0];
+
+    IntColumn(int defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    static IntColumn map(FileChannel channel, long position, long length, int defaultValue) throws IOException {
+        final IntColumn column = new IntColumn(defaultValue);
+        if (length == 0) {
+            return column;
+        }
+        if (length * 4 > Integer.MAX_VALUE) {
+            throw new IOException("index section too large to map");
+        }
+        final ByteBuffer mapped = channel.map(FileChannel.MapMode.PRIVATE, position, length * 4);
+        final int full = (int) (length >>> CHUNK_SHIFT);
+        final int rest = (int) (length & CHUNK_MASK);
+        column.chunks = new IntBuffer[full + (rest == 0 ? 0 : 1)];
+        column.shared = new boolean[column.chunks.length];
+        for (int i = 0; i < full; i++) {
+            ((Buffer) mapped).limit((i + 1) * CHUNK_SIZE * 4).position(i * CHUNK_SIZE * 4);
+            column.chunks[i] = mapped.slice().asIntBuffer();
+        }
+        if (rest != 0) {
+            final IntBuffer last = column.newChunk();
+            ((Buffer) mapped).limit(mapped.capacity()).position(full * CHUNK_SIZE * 4);
+            last.put(mapped.slice().asIntBuffer());
+            column.chunks[full] = last;
+        }
+        return column;
+    }
+
+    int get(long i) {
+        return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+    }
+
+    void set(long i, int value) {
+        final int c = (int) (i >>> CHUNK_SHIFT);
+        if (shared[c]) {
+            unshare(c);
+        }
+        chunks[c].put((int) (i & CHUNK_MASK), value);
+    }
+
+    /**
+     * Returns a read-only copy of this column as it is now, at the cost of copying the array of chunks.
+     */
+    IntColumn snapshot() {
+        final IntColumn snapshot = new IntColumn(defaultValue);
+        Arrays.fill(shared, true);
+        snapshot.chunks = chunks.clone();
+        snapshot.shared = shared.clone();
+        return snapshot;
+    }
+
+    long capacity() {
+        return (long) chunks.length << CHUNK_SHIFT;
+    }
+
+    void ensureCapacity(long n) {
+        final int needed = (int) ((n + CHUNK_MASK) >>> CHUNK_SHIFT);
+        if (needed > chunks.length) {
+            final IntBuffer[] c = Arrays.copyOf(chunks, needed);
+            for (int i = chunks.length; i < needed; i++) {
+                c[i] = newChunk();
+            }
+            chunks = c;
+            shared = Arrays.copyOf(shared, needed);
+        }
+    }
+
+    /**
+     * Writes the first {@code n} values, big-endian, at the current position of {@code channel}.
+     */
+    void write(FileChannel channel, long n) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE * 4);
+        for (int i = 0; n > 0; i++, n -= CHUNK_SIZE) {
+            final int count = (int) Math.min(n, CHUNK_SIZE);
+            final IntBuffer chunk = chunks[i].duplicate();
+            ((Buffer) chunk).clear().limit(count);
+            ((Buffer) buffer).clear();
+            buffer.asIntBuffer().put(chunk);
+            ((Buffer) buffer).limit(count * 4);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private void unshare(int c) {
+        final IntBuffer chunk = chunks[c].duplicate();
+        ((Buffer) chunk).clear();
+        final IntBuffer copy = IntBuffer.allocate(CHUNK_SIZE);
+        copy.put(chunk);
+        chunks[c] = copy;
+        shared[c] = false;
+    }
+
+    private IntBuffer newChunk() {
+        final int[] values = new int[CHUNK_SIZE];
+        if (defaultValue != 0) {
+            Arrays.fill(values, defaultValue);
+        }
+        return IntBuffer.wrap(values);
+    }
+
+}
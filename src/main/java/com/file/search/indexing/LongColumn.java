@@ -0,0 +1,138 @@
+package com.file.search.indexing;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Growable {@code long} column stored in fixed-size chunks. Chunks are either heap arrays or private
+ * (copy-on-write) views of a mapped index file, so a mapped column is only copied page by page as it is written.
+ * <p>
+ * A {@link #snapshot()} shares the chunks of the column; a shared chunk is copied the first time the column
+ * writes to it afterwards, so a snapshot stays as it was taken while the column moves on.
+ *
+ * @author ahmad
+ */
+final class LongColumn {
+
+    static final int CHUNK_SHIFT = 13;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final long defaultValue;
+
+    private LongBuffer[] chunks = new LongBuffer[0];
+
+    /**
+     * Whether a chunk is also referenced by a snapshot, and so has to be copied before it is written.
+     */
+    private boolean[] shared = new boolean[0];
+
+    LongColumn(long defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    static LongColumn map(FileChannel channel, long position, long length, long defaultValue) throws IOException {
+        final LongColumn column = new LongColumn(defaultValue);
+        if (length == 0) {
+            return column;
+        }
+        if (length * 8 > Integer.MAX_VALUE) {
+            throw new IOException("index section too large to map");
+        }
+        final ByteBuffer mapped = channel.map(FileChannel.MapMode.PRIVATE, position, length * 8);
+        final int full = (int) (length >>> CHUNK_SHIFT);
+        final int rest = (int) (length & CHUNK_MASK);
+        column.chunks = new LongBuffer[full + (rest == 0 ? 0 : 1)];
+        column.shared = new boolean[column.chunks.length];
+        for (int i = 0; i < full; i++) {
+            ((Buffer) mapped).limit((i + 1) * CHUNK_SIZE * 8).position(i * CHUNK_SIZE * 8);
+            column.chunks[i] = mapped.slice().asLongBuffer();
+        }
+        if (rest != 0) {
+            final LongBuffer last = column.newChunk();
+            ((Buffer) mapped).limit(mapped.capacity()).position(full * CHUNK_SIZE * 8);
+            last.put(mapped.slice().asLongBuffer());
+            column.chunks[full] = last;
+        }
+        return column;
+    }
+
+    long get(long i) {
+        return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+    }
+
+    void set(long i, long value) {
+        final int c = (int) (i >>> CHUNK_SHIFT);
+        if (shared[c]) {
+            unshare(c);
+        }
+        chunks[c].put((int) (i & CHUNK_MASK), value);
+    }
+
+    /**
+     * Returns a read-only copy of this column as it is now, at the cost of copying the array of chunks.
+     */
+    LongColumn snapshot() {
+        final LongColumn snapshot = new LongColumn(defaultValue);
+        Arrays.fill(shared, true);
+        snapshot.chunks = chunks.clone();
+        snapshot.shared = shared.clone();
+        return snapshot;
+    }
+
+    long capacity() {
+        return (long) chunks.length << CHUNK_SHIFT;
+    }
+
+    void ensureCapacity(long n) {
+        final int needed = (int) ((n + CHUNK_MASK) >>> CHUNK_SHIFT);
+        if (needed > chunks.length) {
+            final LongBuffer[] c = Arrays.copyOf(chunks, needed);
+            for (int i = chunks.length; i < needed; i++) {
+                c[i] = newChunk();
+            }
+            chunks = c;
+            shared = Arrays.copyOf(shared, needed);
+        }
+    }
+
+    /**
+     * Writes the first {@code n} values, big-endian, at the current position of {@code channel}.
+     */
+    void write(FileChannel channel, long n) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE * 8);
+        for (int i = 0; n > 0; i++, n -= CHUNK_SIZE) {
+            final int count = (int) Math.min(n, CHUNK_SIZE);
+            final LongBuffer chunk = chunks[i].duplicate();
+            ((Buffer) chunk).clear().limit(count);
+            ((Buffer) buffer).clear();
+            buffer.asLongBuffer().put(chunk);
+            ((Buffer) buffer).limit(count * 8);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private void unshare(int c) {
+        final LongBuffer chunk = chunks[c].duplicate();
+        ((Buffer) chunk).clear();
+        final LongBuffer copy = LongBuffer.allocate(CHUNK_SIZE);
+        copy.put(chunk);
+        chunks[c] = copy;
+        shared[c] = false;
+    }
+
+    private LongBuffer newChunk() {
+        final long[] values = new long[CHUNK_SIZE];
+        if (defaultValue != 0) {
+            Arrays.fill(values, defaultValue);
+        }
+        return LongBuffer.wrap(values);
+    }
+
+}
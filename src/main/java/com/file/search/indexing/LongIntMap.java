@@ -0,0 +1,147 @@
+package com.file.search.indexing;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Open-addressing (linear probing) map from {@code long} keys to non-negative {@code int} values,
+ * stored in columns so that it can be written to and mapped from the index file.
+ *
+ * @author ahmad
+ */
+final class LongIntMap {
+
+    static final int NO_VALUE = -1;
+
+    private static final int MIN_CAPACITY = 1 << 4;
+
+    private LongColumn keys;
+    private IntColumn values;
+    private int capacity;
+    private int size;
+
+    LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    private LongIntMap(int capacity) {
+        this(new LongColumn(0L), new IntColumn(NO_VALUE), capacity, 0);
+        keys.ensureCapacity(capacity);
+        values.ensureCapacity(capacity);
+    }
+
+    private LongIntMap(LongColumn keys, IntColumn values, int capacity, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    static LongIntMap map(FileChannel channel, long position, int capacity, int size) throws IOException {
+        final LongColumn keys = LongColumn.map(channel, position, capacity, 0L);
+        final IntColumn values = IntColumn.map(channel, position + 8L * capacity, capacity, NO_VALUE);
+        return new LongIntMap(keys, values, capacity, size);
+    }
+
+    static long bytes(int capacity) {
+        return 12L * capacity;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Returns a read-only copy of this map as it is now, sharing its columns until this map writes to them.
+     */
+    LongIntMap snapshot() {
+        return new LongIntMap(keys.snapshot(), values.snapshot(), capacity, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int get(long key) {
+        final int mask = capacity - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            final int value = values.get(i);
+            if (value == NO_VALUE || keys.get(i) == key) {
+                return value;
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        if ((size + 1) << 1 > capacity) {
+            resize(capacity << 1);
+        }
+        final int mask = capacity - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (values.get(i) == NO_VALUE) {
+                keys.set(i, key);
+                values.set(i, value);
+                size++;
+                return;
+            }
+            if (keys.get(i) == key) {
+                values.set(i, value);
+                return;
+            }
+        }
+    }
+
+    void remove(long key) {
+        final int mask = capacity - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            final int value = values.get(i);
+            if (value == NO_VALUE) {
+                return;
+            }
+            if (keys.get(i) == key) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion, so no tombstones are left behind.
+        for (int j = (i + 1) & mask; values.get(j) != NO_VALUE; j = (j + 1) & mask) {
+            final int home = hash(keys.get(j)) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys.set(i, keys.get(j));
+                values.set(i, values.get(j));
+                i = j;
+            }
+        }
+        values.set(i, NO_VALUE);
+        size--;
+    }
+
+    void write(FileChannel channel) throws IOException {
+        keys.write(channel, capacity);
+        values.write(channel, capacity);
+    }
+
+    private void resize(int newCapacity) {
+        final LongIntMap resized = new LongIntMap(newCapacity);
+        for (int i = 0; i < capacity; i++) {
+            final int value = values.get(i);
+            if (value != NO_VALUE) {
+                resized.put(keys.get(i), value);
+            }
+        }
+        keys = resized.keys;
+        values = resized.values;
+        capacity = newCapacity;
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.file.search.indexing;
+
+import com.file.search.util.LevenshteinAutomaton;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * The ids of the live names of a {@link NameTable}, sorted by the UTF-8 bytes of the names. That is the order of
+ * their code points, so the names sharing a prefix are next to each other, as in the leaves of a trie, and a walk
+ * can skip all of them at once. Immutable; a dictionary of a later version of the table is merged from an earlier
+ * one and the names used or dropped in between.
+ *
+ * @author ahmad
+ */
+final class NameDictionary {
+
+    private final int[] ids;
+
+    private NameDictionary(int[] ids) {
+        this.ids = ids;
+    }
+
+    static NameDictionary build(NameTable names) {
+        return new NameDictionary(IntStream.range(0, names.size())
+                .filter(nameId -> names.getFirstNode(nameId) != NameTable.NONE)
+                .boxed()
+                .parallel()
+                .sorted(order(names))
+                .mapToInt(Integer::intValue)
+                .toArray());
+    }
+
+    /**
+     * Returns the dictionary of {@code names}, given that this is the dictionary of an earlier version of it and
+     * {@code changed} holds the ids of every name used or dropped since, in any order and possibly repeated.
+     */
+    NameDictionary merge(NameTable names, int[] changed) {
+        final BitSet stale = new BitSet();
+        for (int nameId : changed) {
+            stale.set(nameId);
+        }
+        final int[] added = stale.stream()
+                .filter(nameId -> nameId < names.size() && names.getFirstNode(nameId) != NameTable.NONE)
+                .boxed()
+                .sorted(order(names))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        final int[] merged = new int[ids.length + added.length];
+        int n = 0;
+        int j = 0;
+        for (int nameId : ids) {
+            if (stale.get(nameId)) {
+                continue;
+            }
+            while (j < added.length && compare(names, added[j], nameId) < 0) {
+                merged[n++] = added[j++];
+            }
+            merged[n++] = nameId;
+        }
+        while (j < added.length) {
+            merged[n++] = added[j++];
+        }
+        return new NameDictionary(n == merged.length ? merged : Arrays.copyOf(merged, n));
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * Passes the names within the bound of {@code automaton} to {@code visitor}, in dictionary order, with their
+     * distance. The bound starts at the maximum number of edits of {@code automaton}, and is lowered to whatever
+     * {@code visitor} returns. Names are stepped through from the end of the prefix they share with the name
+     * before, and the run of names sharing a prefix past the bound is skipped as a whole.
+     */
+    void walk(NameTable names, LevenshteinAutomaton automaton, Visitor visitor) {
+        final int width = automaton.width();
+        int[][] rows = new int[16][];
+        rows[0] = new int[width];
+        automaton.start(rows[0]);
+        int[] codePoints = new int[16];
+        // ends[d] is where the first d code points of the current name end in its UTF-8 bytes.
+        int[] ends = new int[17];
+        int previousLength = 0;
+        int computed = 0;
+        int bound = automaton.maxEdits();
+        for (int i = 0; i < ids.length; ) {
+            final int nameId = ids[i];
+            final long offset = names.offset(nameId);
+            final int byteLength = names.length(nameId);
+            if (codePoints.length < byteLength) {
+                codePoints = Arrays.copyOf(codePoints, byteLength);
+                ends = Arrays.copyOf(ends, byteLength + 1);
+            }
+            // names only ever differ from the one before after the prefix they share.
+            int length = 0;
+            int shared = 0;
+            boolean same = true;
+            for (int p = 0; p < byteLength; ) {
+                final int first = names.byteAt(offset + p) & 0xFF;
+                final int count = first < 0x80 ? 1 : first < 0xE0 ? 2 : first < 0xF0 ? 3 : 4;
+                int c = count == 1 ? first : first & (0xFF >> (count + 1));
+                for (int k = 1; k < count; k++) {
+                    c = c << 6 | names.byteAt(offset + p + k) & 0x3F;
+                }
+                same = same && length < previousLength && codePoints[length] == c;
+                if (same) {
+                    shared++;
+                }
+                codePoints[length++] = c;
+                ends[length] = p += count;
+            }
+            previousLength = length;
+            if (rows.length <= length) {
+                rows = Arrays.copyOf(rows, Math.max(length + 1, rows.length << 1));
+            }
+            int depth = Math.min(shared, computed);
+            boolean pruned = depth > 0 && !LevenshteinAutomaton.canMatch(rows[depth], bound);
+            while (!pruned && depth < length) {
+                if (rows[depth + 1] == null) {
+                    rows[depth + 1] = new int[width];
+                }
+                automaton.step(depth > 0 ? rows[depth - 1] : null, depth > 0 ? codePoints[depth - 1] : -1,
+                        rows[depth], codePoints[depth], rows[depth + 1]);
+                depth++;
+                pruned = !LevenshteinAutomaton.canMatch(rows[depth], bound);
+            }
+            computed = depth;
+            if (pruned) {
+                i = skip(names, i, offset, ends[depth]);
+                continue;
+            }
+            final int distance = LevenshteinAutomaton.distance(rows[length]);
+            if (distance <= bound) {
+                bound = Math.min(bound, visitor.visit(nameId, distance));
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Returns the index of the first name after the one at {@code index} not starting with the first
+     * {@code prefixLength} bytes of that name, which start at {@code offset}. The names starting with them follow
+     * it, so they are galloped over and then searched for the end.
+     */
+    private int skip(NameTable names, int index, long offset, int prefixLength) {
+        int low = index;
+        int step = 1;
+        int high = index + step;
+        while (high < ids.length && startsWith(names, ids[high], offset, prefixLength)) {
+            low = high;
+            step <<= 1;
+            high = index + step;
+        }
+        high = Math.min(high, ids.length);
+        // names at low start with the prefix, names at high do not.
+        while (high - low > 1) {
+            final int mid = (low + high) >>> 1;
+            if (startsWith(names, ids[mid], offset, prefixLength)) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+
+    private static boolean startsWith(NameTable names, int nameId, long prefixOffset, int prefixLength) {
+        if (names.length(nameId) < prefixLength) {
+            return false;
+        }
+        final long offset = names.offset(nameId);
+        for (int p = 0; p < prefixLength; p++) {
+            if (names.byteAt(offset + p) != names.byteAt(prefixOffset + p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Comparator<Integer> order(NameTable names) {
+        return (a, b) -> compare(names, a, b);
+    }
+
+    private static int compare(NameTable names, int a, int b) {
+        final long offsetA = names.offset(a);
+        final long offsetB = names.offset(b);
+        final int lengthA = names.length(a);
+        final int lengthB = names.length(b);
+        for (int p = 0, n = Math.min(lengthA, lengthB); p < n; p++) {
+            final int d = (names.byteAt(offsetA + p) & 0xFF) - (names.byteAt(offsetB + p) & 0xFF);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    interface Visitor {
+
+        /**
+         * Takes a name within the bound, and returns the bound for the rest of the walk.
+         */
+        int visit(int nameId, int distance);
+
+    }
+
+}
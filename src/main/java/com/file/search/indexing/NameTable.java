@@ -0,0 +1,433 @@
+package com.file.search.indexing;
+
+import com.file.search.util.CaseFolding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Dictionary of distinct file names. Every name is stored once as UTF-8 in a byte column and is referred to
+ * by an int id everywhere else. For each name it also keeps the head of the list of nodes with that name.
+ * <p>
+ * Every name also has a {@link CaseFolding case folded} form, for case insensitive matching. It is stored next to
+ * the name in the byte column if it differs from the name, which is not the case for most names.
+ * <p>
+ * Names are reference counted by the nodes using them. A name that is no longer used is dropped, its id is
+ * reused by the next new name, and its bytes are reclaimed once dropped names make up half of the byte column.
+ *
+ * @author ahmad
+ */
+final class NameTable {
+
+    static final int NONE = -1;
+
+    private static final int MIN_SLOTS = 1 << 4;
+    private static final int LENGTH_BITS = 16;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+    private static final long FREE = -1L;
+    /**
+     * The folded form of a name is the name itself.
+     */
+    private static final long SAME = -2L;
+    private static final long MIN_COMPACTION_BYTES = 1L << 20;
+
+    private final LongColumn refs;
+    private final LongColumn foldedRefs;
+    private final IntColumn firstNodes;
+    private final IntColumn counts;
+    private ByteColumn bytes;
+    private IntColumn slots;
+    private int slotCapacity;
+    private int count;
+    private int liveCount;
+    private int freeId;
+    private long byteCount;
+    private long garbage;
+
+    NameTable() {
+        this(new ByteColumn((byte) 0), new LongColumn(0L), new LongColumn(SAME), new IntColumn(NONE), new IntColumn(0),
+                newSlots(MIN_SLOTS), MIN_SLOTS, 0, 0, NONE, 0L, 0L);
+    }
+
+    private NameTable(ByteColumn bytes, LongColumn refs, LongColumn foldedRefs, IntColumn firstNodes,
+                      IntColumn counts, IntColumn slots, int slotCapacity, int count, int liveCount, int freeId,
+                      long byteCount, long garbage) {
+        this.bytes = bytes;
+        this.refs = refs;
+        this.foldedRefs = foldedRefs;
+        this.firstNodes = firstNodes;
+        this.counts = counts;
+        this.slots = slots;
+        this.slotCapacity = slotCapacity;
+        this.count = count;
+        this.liveCount = liveCount;
+        this.freeId = freeId;
+        this.byteCount = byteCount;
+        this.garbage = garbage;
+    }
+
+    static NameTable map(FileChannel channel, long position, int count, long byteCount, int slotCapacity,
+                         int liveCount, int freeId, long garbage) throws IOException {
+        final ByteColumn bytes = ByteColumn.map(channel, position, byteCount, (byte) 0);
+        position = align(position + byteCount);
+        final LongColumn refs = LongColumn.map(channel, position, count, 0L);
+        position += 8L * count;
+        final LongColumn foldedRefs = LongColumn.map(channel, position, count, SAME);
+        position += 8L * count;
+        final IntColumn firstNodes = IntColumn.map(channel, position, count, NONE);
+        position += 4L * count;
+        final IntColumn counts = IntColumn.map(channel, position, count, 0);
+        position = align(position + 4L * count);
+        final IntColumn slots = IntColumn.map(channel, position, slotCapacity, NONE);
+        return new NameTable(bytes, refs, foldedRefs, firstNodes, counts, slots, slotCapacity, count, liveCount,
+                freeId, byteCount, garbage);
+    }
+
+    static long bytes(int count, long byteCount, int slotCapacity) {
+        return align(align(byteCount) + 24L * count) + 4L * slotCapacity;
+    }
+
+    static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static IntColumn newSlots(int capacity) {
+        final IntColumn slots = new IntColumn(NONE);
+        slots.ensureCapacity(capacity);
+        return slots;
+    }
+
+    private static int hash(byte[] name) {
+        int h = 0x811c9dc5;
+        for (byte b : name) {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns a read-only copy of this table as it is now, sharing its columns until this table writes to them.
+     */
+    NameTable snapshot() {
+        return new NameTable(bytes.snapshot(), refs.snapshot(), foldedRefs.snapshot(), firstNodes.snapshot(),
+                counts.snapshot(), slots.snapshot(), slotCapacity, count, liveCount, freeId, byteCount, garbage);
+    }
+
+    /**
+     * Returns the number of ids handed out so far; ids of dropped names are in this range too.
+     */
+    int size() {
+        return count;
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    int freeId() {
+        return freeId;
+    }
+
+    long byteCount() {
+        return byteCount;
+    }
+
+    long garbage() {
+        return garbage;
+    }
+
+    int slotCapacity() {
+        return slotCapacity;
+    }
+
+    int id(String name) {
+        final byte[] encoded = name.getBytes(UTF_8);
+        final int mask = slotCapacity - 1;
+        for (int i = hash(encoded) & mask; ; i = (i + 1) & mask) {
+            final int id = slots.get(i);
+            if (id == NONE || equals(id, encoded)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the id of {@code name}, adding it if needed. A new name is dropped again as soon as it has no
+     * references left, so callers take one with {@link #retain(int)}.
+     */
+    int add(String name) {
+        final byte[] encoded = name.getBytes(UTF_8);
+        if (encoded.length > LENGTH_MASK || encoded.length > ByteColumn.CHUNK_SIZE) {
+            throw new IllegalArgumentException("file name too long : " + name);
+        }
+        final int mask = slotCapacity - 1;
+        int i = hash(encoded) & mask;
+        for (int id; (id = slots.get(i)) != NONE; i = (i + 1) & mask) {
+            if (equals(id, encoded)) {
+                return id;
+            }
+        }
+        final String folded = CaseFolding.fold(name);
+        final byte[] encodedFolded = folded.equals(name) ? null : folded.getBytes(UTF_8);
+        if (encodedFolded != null && (encodedFolded.length > LENGTH_MASK || encodedFolded.length > ByteColumn.CHUNK_SIZE)) {
+            throw new IllegalArgumentException("file name too long : " + name);
+        }
+        final long start = append(bytes, byteCount, encoded);
+        byteCount = start + encoded.length;
+        long foldedRef = SAME;
+        if (encodedFolded != null) {
+            final long foldedStart = append(bytes, byteCount, encodedFolded);
+            byteCount = foldedStart + encodedFolded.length;
+            foldedRef = foldedStart << LENGTH_BITS | encodedFolded.length;
+        }
+        final int id;
+        if (freeId != NONE) {
+            id = freeId;
+            freeId = counts.get(id);
+        } else {
+            id = count++;
+            refs.ensureCapacity(count);
+            foldedRefs.ensureCapacity(count);
+            firstNodes.ensureCapacity(count);
+            counts.ensureCapacity(count);
+        }
+        refs.set(id, start << LENGTH_BITS | encoded.length);
+        foldedRefs.set(id, foldedRef);
+        firstNodes.set(id, NONE);
+        counts.set(id, 0);
+        liveCount++;
+        if (liveCount << 1 > slotCapacity) {
+            rehash(slotCapacity << 1);
+        } else {
+            slots.set(i, id);
+        }
+        return id;
+    }
+
+    void retain(int id) {
+        counts.set(id, counts.get(id) + 1);
+    }
+
+    /**
+     * Drops a reference to name {@code id}, and the name itself with its last reference.
+     */
+    void release(int id) {
+        final int references = counts.get(id) - 1;
+        if (references > 0) {
+            counts.set(id, references);
+            return;
+        }
+        removeSlot(id);
+        garbage += refs.get(id) & LENGTH_MASK;
+        final long foldedRef = foldedRefs.get(id);
+        if (foldedRef != SAME) {
+            garbage += foldedRef & LENGTH_MASK;
+        }
+        refs.set(id, FREE);
+        foldedRefs.set(id, SAME);
+        firstNodes.set(id, NONE);
+        counts.set(id, freeId);
+        freeId = id;
+        liveCount--;
+        if (garbage >= MIN_COMPACTION_BYTES && garbage << 1 >= byteCount) {
+            compact();
+        }
+    }
+
+    String name(int id) {
+        return decode(refs.get(id));
+    }
+
+    /**
+     * Returns the {@link CaseFolding case folded} form of name {@code id}.
+     */
+    String folded(int id) {
+        final long ref = foldedRefs.get(id);
+        return decode(ref != SAME ? ref : refs.get(id));
+    }
+
+    private String decode(long ref) {
+        return new String(read(ref), UTF_8);
+    }
+
+    /**
+     * Tells whether name {@code id} contains the UTF-8 encoded {@code literal}, without decoding the name.
+     */
+    boolean contains(int id, byte[] literal) {
+        return contains(refs.get(id), literal);
+    }
+
+    /**
+     * Tells whether the folded form of name {@code id} contains the UTF-8 encoded, folded {@code literal}, without
+     * decoding it.
+     */
+    boolean containsFolded(int id, byte[] literal) {
+        final long ref = foldedRefs.get(id);
+        return contains(ref != SAME ? ref : refs.get(id), literal);
+    }
+
+    private boolean contains(long ref, byte[] literal) {
+        final long start = ref >>> LENGTH_BITS;
+        final long last = start + (ref & LENGTH_MASK) - literal.length;
+        outer:
+        for (long i = start; i <= last; i++) {
+            for (int j = 0; j < literal.length; j++) {
+                if (bytes.get(i + j) != literal[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns where the UTF-8 bytes of name {@code id} start, for {@link #byteAt(long)}.
+     */
+    long offset(int id) {
+        return refs.get(id) >>> LENGTH_BITS;
+    }
+
+    /**
+     * Returns the length of name {@code id} in UTF-8 bytes.
+     */
+    int length(int id) {
+        return (int) (refs.get(id) & LENGTH_MASK);
+    }
+
+    byte byteAt(long position) {
+        return bytes.get(position);
+    }
+
+    int getFirstNode(int id) {
+        return firstNodes.get(id);
+    }
+
+    void setFirstNode(int id, int node) {
+        firstNodes.set(id, node);
+    }
+
+    void write(FileChannel channel) throws IOException {
+        bytes.write(channel, byteCount);
+        pad(channel);
+        refs.write(channel, count);
+        foldedRefs.write(channel, count);
+        firstNodes.write(channel, count);
+        counts.write(channel, count);
+        pad(channel);
+        slots.write(channel, slotCapacity);
+    }
+
+    static void pad(FileChannel channel) throws IOException {
+        final long position = channel.position();
+        final long aligned = align(position);
+        if (aligned != position) {
+            channel.write(ByteBuffer.allocate((int) (aligned - position)));
+        }
+    }
+
+    /**
+     * Copies {@code name} to {@code column} at {@code position} or, if it would straddle two chunks, at the start
+     * of the next chunk, and returns where it went.
+     */
+    private static long append(ByteColumn column, long position, byte[] name) {
+        if ((position & ByteColumn.CHUNK_MASK) + name.length > ByteColumn.CHUNK_SIZE) {
+            position = (position + ByteColumn.CHUNK_MASK) & ~(long) ByteColumn.CHUNK_MASK;
+        }
+        column.ensureCapacity(position + name.length);
+        for (int j = 0; j < name.length; j++) {
+            column.set(position + j, name[j]);
+        }
+        return position;
+    }
+
+    private byte[] bytes(int id) {
+        return read(refs.get(id));
+    }
+
+    private byte[] read(long ref) {
+        final long start = ref >>> LENGTH_BITS;
+        final byte[] name = new byte[(int) (ref & LENGTH_MASK)];
+        for (int j = 0; j < name.length; j++) {
+            name[j] = bytes.get(start + j);
+        }
+        return name;
+    }
+
+    private boolean equals(int id, byte[] name) {
+        final long ref = refs.get(id);
+        if ((ref & LENGTH_MASK) != name.length) {
+            return false;
+        }
+        final long start = ref >>> LENGTH_BITS;
+        for (int i = 0; i < name.length; i++) {
+            if (bytes.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void removeSlot(int id) {
+        final int mask = slotCapacity - 1;
+        int i = hash(bytes(id)) & mask;
+        while (slots.get(i) != id) {
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion, so no tombstones are left behind.
+        for (int j = (i + 1) & mask; slots.get(j) != NONE; j = (j + 1) & mask) {
+            final int home = hash(bytes(slots.get(j))) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                slots.set(i, slots.get(j));
+                i = j;
+            }
+        }
+        slots.set(i, NONE);
+    }
+
+    private void rehash(int capacity) {
+        final IntColumn s = newSlots(capacity);
+        final int mask = capacity - 1;
+        for (int id = 0; id < count; id++) {
+            if (refs.get(id) == FREE) {
+                continue;
+            }
+            int i = hash(bytes(id)) & mask;
+            while (s.get(i) != NONE) {
+                i = (i + 1) & mask;
+            }
+            s.set(i, id);
+        }
+        slots = s;
+        slotCapacity = capacity;
+    }
+
+    private void compact() {
+        final ByteColumn compacted = new ByteColumn((byte) 0);
+        long position = 0L;
+        for (int id = 0; id < count; id++) {
+            final long ref = refs.get(id);
+            if (ref == FREE) {
+                continue;
+            }
+            final byte[] name = read(ref);
+            final long start = append(compacted, position, name);
+            refs.set(id, start << LENGTH_BITS | (ref & LENGTH_MASK));
+            position = start + name.length;
+            final long foldedRef = foldedRefs.get(id);
+            if (foldedRef != SAME) {
+                final byte[] folded = read(foldedRef);
+                final long foldedStart = append(compacted, position, folded);
+                foldedRefs.set(id, foldedStart << LENGTH_BITS | (foldedRef & LENGTH_MASK));
+                position = foldedStart + folded.length;
+            }
+        }
+        bytes = compacted;
+        byteCount = position;
+        garbage = 0L;
+    }
+
+}
@@ -0,0 +1,642 @@
+package com.file.search.indexing;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * The index as a table of nodes, one per path element. A node holds its parent node id, its name id and its
+ * metadata; full paths are only built on demand. All per node data lives in primitive columns:
+ * <ul>
+ * <li>the metadata of indexed entries (modification time, size, creation time, mode) as read from their
+ * {@link java.nio.file.attribute.BasicFileAttributes} when they are indexed,</li>
+ * <li>the children of a node and the nodes sharing a name are doubly linked lists threaded through the table,</li>
+ * <li>{@code (parent, name) -> node} lookups go through an open-addressing {@link LongIntMap},</li>
+ * <li>indexed entries are also kept in {@link SortedIndex}es by size and by modification time, for range
+ * queries. These are not part of the index file; a table that is read from one gets them from
+ * {@link #buildSortedIndexes()}.</li>
+ * </ul>
+ * Nodes that are only there to complete the path of an indexed entry (e.g. the parents of an indexed root) carry no
+ * {@link #GROUPED} flag.
+ * <p>
+ * Removed nodes are kept on a free list threaded through {@code nextSiblings} and their ids are handed out again,
+ * and names are dropped with the last node using them, so the table stays as large as its peak number of live
+ * entries instead of growing with every file ever seen.
+ * <p>
+ * The index file is this table as it is, laid out to be mapped: a header of {@link #HEADER_SIZE} bytes (magic,
+ * version, counts, capacities and the length of the file), then flat sections whose offsets follow from the
+ * header, each aligned to 8 bytes:
+ * <ol>
+ * <li>the {@link NameTable}: the names as UTF-8, then the references, first node and node count of each name,
+ * then the hash slots,</li>
+ * <li>the link columns (parents, name ids, first children, next and previous siblings, next and previous same
+ * names), 4 bytes per node each,</li>
+ * <li>the metadata columns (modification times, sizes and creation times of 8 bytes, modes of 4 and flags of 1 byte
+ * per node),</li>
+ * <li>the {@code (parent, name) -> node} map.</li>
+ * </ol>
+ * {@link #read(Path)} maps every section privately and queries run on the mappings as they are, so loading costs
+ * time in the number of chunks rather than of nodes, and only pages that are touched are ever read. A file is only
+ * taken if its length is the one in its header, which holds since it is written under another name and moved into
+ * place.
+ * <p>
+ * Not thread-safe, but a {@link #snapshot()} may be read by any number of threads while this table changes.
+ *
+ * @author ahmad
+ */
+final class NodeTable {
+
+    static final int NONE = -1;
+
+    static final byte LIVE = 1;
+    static final byte GROUPED = 1 << 1;
+    static final byte DIRECTORY = 1 << 2;
+    static final byte HIDDEN = 1 << 3;
+    static final byte SYMBOLIC_LINK = 1 << 4;
+    static final byte REGULAR = 1 << 5;
+
+    /**
+     * The flags that describe the entry itself, captured when it is indexed.
+     */
+    static final byte ATTRIBUTES = DIRECTORY | HIDDEN | SYMBOLIC_LINK | REGULAR;
+
+    private static final int MAGIC = 0x46465349;
+    private static final int VERSION = 6;
+    private static final int HEADER_SIZE = 96;
+
+    private final NameTable names;
+    private final IntColumn parents;
+    private final IntColumn nameIds;
+    private final IntColumn firstChildren;
+    private final IntColumn nextSiblings;
+    private final IntColumn prevSiblings;
+    private final IntColumn nextSameNames;
+    private final IntColumn prevSameNames;
+    private final LongColumn lastModified;
+    private final LongColumn sizes;
+    private final LongColumn creationTimes;
+    private final IntColumn modes;
+    private final ByteColumn flags;
+    private final LongIntMap children;
+    private final FileSystem fs = FileSystems.getDefault();
+
+    private int count;
+    private int liveCount;
+    private int freeId;
+    private Listener listener;
+    private volatile SortedIndex sizeIndex;
+    private volatile SortedIndex lastModifiedIndex;
+
+    NodeTable() {
+        this(new NameTable(), new IntColumn(NONE), new IntColumn(NONE), new IntColumn(NONE), new IntColumn(NONE),
+                new IntColumn(NONE), new IntColumn(NONE), new IntColumn(NONE), new LongColumn(0L),
+                new LongColumn(0L), new LongColumn(0L), new IntColumn(0), new ByteColumn((byte) 0),
+                new LongIntMap(), 0, 0, NONE);
+        sizeIndex = new SortedIndex();
+        lastModifiedIndex = new SortedIndex();
+    }
+
+    private NodeTable(NameTable names, IntColumn parents, IntColumn nameIds, IntColumn firstChildren,
+                      IntColumn nextSiblings, IntColumn prevSiblings, IntColumn nextSameNames,
+                      IntColumn prevSameNames, LongColumn lastModified, LongColumn sizes,
+                      LongColumn creationTimes, IntColumn modes, ByteColumn flags, LongIntMap children,
+                      int count, int liveCount, int freeId) {
+        this.names = names;
+        this.parents = parents;
+        this.nameIds = nameIds;
+        this.firstChildren = firstChildren;
+        this.nextSiblings = nextSiblings;
+        this.prevSiblings = prevSiblings;
+        this.nextSameNames = nextSameNames;
+        this.prevSameNames = prevSameNames;
+        this.lastModified = lastModified;
+        this.sizes = sizes;
+        this.creationTimes = creationTimes;
+        this.modes = modes;
+        this.flags = flags;
+        this.children = children;
+        this.count = count;
+        this.liveCount = liveCount;
+        this.freeId = freeId;
+    }
+
+    private static long key(int parent, int name) {
+        return (long) parent << 32 | (name & 0xFFFFFFFFL);
+    }
+
+    static NodeTable read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException("truncated index file");
+                }
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("unsupported index file");
+            }
+            final int count = header.getInt(8);
+            final int liveCount = header.getInt(12);
+            final int nameCount = header.getInt(16);
+            final int slotCapacity = header.getInt(20);
+            final int childCapacity = header.getInt(24);
+            final int childCount = header.getInt(28);
+            final long nameBytes = header.getLong(32);
+            final long length = header.getLong(40);
+            final int freeId = header.getInt(48);
+            final int liveNames = header.getInt(52);
+            final int freeNameId = header.getInt(56);
+            final long nameGarbage = header.getLong(60);
+            if (length != channel.size()) {
+                throw new IOException("truncated index file");
+            }
+            long position = HEADER_SIZE;
+            final NameTable names = NameTable.map(channel, position, nameCount, nameBytes, slotCapacity,
+                    liveNames, freeNameId, nameGarbage);
+            position = NameTable.align(position + NameTable.bytes(nameCount, nameBytes, slotCapacity));
+            final IntColumn[] links = new IntColumn[7];
+            for (int i = 0; i < links.length; i++) {
+                links[i] = IntColumn.map(channel, position, count, NONE);
+                position += 4L * count;
+            }
+            position = NameTable.align(position);
+            final LongColumn lastModified = LongColumn.map(channel, position, count, 0L);
+            position += 8L * count;
+            final LongColumn sizes = LongColumn.map(channel, position, count, 0L);
+            position += 8L * count;
+            final LongColumn creationTimes = LongColumn.map(channel, position, count, 0L);
+            position += 8L * count;
+            final IntColumn modes = IntColumn.map(channel, position, count, 0);
+            position += 4L * count;
+            final ByteColumn flags = ByteColumn.map(channel, position, count, (byte) 0);
+            position = NameTable.align(position + count);
+            final LongIntMap children = LongIntMap.map(channel, position, childCapacity, childCount);
+            return new NodeTable(names, links[0], links[1], links[2], links[3], links[4], links[5], links[6],
+                    lastModified, sizes, creationTimes, modes, flags, children, count, liveCount, freeId);
+        }
+    }
+
+    void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            channel.position(HEADER_SIZE);
+            names.write(channel);
+            NameTable.pad(channel);
+            for (IntColumn column : Arrays.asList(parents, nameIds, firstChildren, nextSiblings, prevSiblings,
+                    nextSameNames, prevSameNames)) {
+                column.write(channel, count);
+            }
+            NameTable.pad(channel);
+            lastModified.write(channel, count);
+            sizes.write(channel, count);
+            creationTimes.write(channel, count);
+            modes.write(channel, count);
+            flags.write(channel, count);
+            NameTable.pad(channel);
+            children.write(channel);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(liveCount)
+                    .putInt(names.size()).putInt(names.slotCapacity())
+                    .putInt(children.capacity()).putInt(children.size())
+                    .putLong(names.byteCount()).putLong(channel.position())
+                    .putInt(freeId).putInt(names.liveCount()).putInt(names.freeId()).putLong(names.garbage());
+            ((Buffer) header).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Returns a read-only copy of this table as it is now. Columns and sorted indexes share their chunks and
+     * blocks with the snapshot, and copy one only when this table first writes to it afterwards; so a snapshot
+     * costs time in the number of chunks, not of nodes, and memory in what changes while it is in use.
+     * A snapshot must not be changed.
+     */
+    NodeTable snapshot() {
+        final NodeTable snapshot = new NodeTable(names.snapshot(), parents.snapshot(), nameIds.snapshot(),
+                firstChildren.snapshot(), nextSiblings.snapshot(), prevSiblings.snapshot(), nextSameNames.snapshot(),
+                prevSameNames.snapshot(), lastModified.snapshot(), sizes.snapshot(), creationTimes.snapshot(),
+                modes.snapshot(), flags.snapshot(), children.snapshot(), count, liveCount, freeId);
+        if (hasSortedIndexes()) {
+            snapshot.sizeIndex = sizeIndex.snapshot();
+            snapshot.lastModifiedIndex = lastModifiedIndex.snapshot();
+        }
+        return snapshot;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    NameTable names() {
+        return names;
+    }
+
+    /**
+     * Returns the number of ids handed out so far; removed nodes waiting to be reused are in this range too.
+     */
+    int size() {
+        return count;
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    boolean isLive(int id) {
+        return (flags.get(id) & LIVE) != 0;
+    }
+
+    boolean isGrouped(int id) {
+        return (flags.get(id) & GROUPED) != 0;
+    }
+
+    boolean isDirectory(int id) {
+        return (flags.get(id) & DIRECTORY) != 0;
+    }
+
+    boolean isHidden(int id) {
+        return (flags.get(id) & HIDDEN) != 0;
+    }
+
+    /**
+     * Returns the {@link #ATTRIBUTES} flags of node {@code id}.
+     */
+    byte getAttributes(int id) {
+        return (byte) (flags.get(id) & ATTRIBUTES);
+    }
+
+    int getParent(int id) {
+        return parents.get(id);
+    }
+
+    int getNameId(int id) {
+        return nameIds.get(id);
+    }
+
+    long getLastModified(int id) {
+        return lastModified.get(id);
+    }
+
+    long getSize(int id) {
+        return sizes.get(id);
+    }
+
+    long getCreationTime(int id) {
+        return creationTimes.get(id);
+    }
+
+    /**
+     * Returns the type and permission bits of node {@code id}, see {@link com.file.search.util.FileUtils#mode}.
+     */
+    int getMode(int id) {
+        return modes.get(id);
+    }
+
+    /**
+     * Sets the metadata of indexed node {@code id}; times are in milliseconds since the epoch.
+     */
+    void update(int id, long lastModified, long size, long creationTime, int mode) {
+        unindex(id);
+        setMetadata(id, lastModified, size, creationTime, mode);
+        index(id);
+    }
+
+    boolean hasSortedIndexes() {
+        return sizeIndex != null;
+    }
+
+    /**
+     * Returns the index of the indexed nodes by size, or {@code null} if it is not built yet.
+     */
+    SortedIndex sizeIndex() {
+        return sizeIndex;
+    }
+
+    /**
+     * Returns the index of the indexed nodes by modification time, or {@code null} if it is not built yet.
+     */
+    SortedIndex lastModifiedIndex() {
+        return lastModifiedIndex;
+    }
+
+    /**
+     * Builds the {@link SortedIndex}es of a table read from an index file with one pass over the metadata columns
+     * and a sort. Tables created empty maintain them from the start.
+     */
+    void buildSortedIndexes() {
+        if (hasSortedIndexes()) {
+            return;
+        }
+        final int[] ids = new int[liveCount];
+        int n = 0;
+        for (int id = 0; id < count; id++) {
+            if ((flags.get(id) & GROUPED) != 0) {
+                ids[n++] = id;
+            }
+        }
+        final long[] values = new long[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = sizes.get(ids[i]);
+        }
+        final SortedIndex bySize = SortedIndex.of(values, Arrays.copyOf(ids, n), n);
+        for (int i = 0; i < n; i++) {
+            values[i] = lastModified.get(ids[i]);
+        }
+        lastModifiedIndex = SortedIndex.of(values, ids, n);
+        sizeIndex = bySize;
+    }
+
+    int getFirstChild(int id) {
+        return firstChildren.get(id);
+    }
+
+    int getNextSibling(int id) {
+        return nextSiblings.get(id);
+    }
+
+    int getNextSameName(int id) {
+        return nextSameNames.get(id);
+    }
+
+    Path getPath(int id) {
+        int depth = 0;
+        for (int p = id; p != NONE; p = parents.get(p)) {
+            depth++;
+        }
+        final String[] more = new String[depth - 1];
+        int p = id;
+        for (int i = more.length - 1; i >= 0; i--) {
+            more[i] = names.name(nameIds.get(p));
+            p = parents.get(p);
+        }
+        return fs.getPath(names.name(nameIds.get(p)), more);
+    }
+
+    /**
+     * Returns the node id of {@code path}, or {@link #NONE} if there is no node for it.
+     */
+    int lookup(Path path) {
+        final Path root = path.getRoot();
+        if (root == null) {
+            return NONE;
+        }
+        int id = child(NONE, root.toString());
+        for (int i = 0, n = path.getNameCount(); i < n && id != NONE; i++) {
+            id = child(id, path.getName(i).toString());
+        }
+        return id;
+    }
+
+    /**
+     * Adds {@code path} and any missing parent, and flags it as an indexed entry with the given {@link #ATTRIBUTES}
+     * and metadata.
+     * Paths that can not be built back from their string form (names not decodable in the platform charset) are
+     * not added.
+     */
+    int add(Path path, byte attributes, long lastModified, long size, long creationTime, int mode) {
+        final Path root = path.getRoot();
+        if (root == null) {
+            return NONE;
+        }
+        try {
+            fs.getPath(path.toString());
+        } catch (InvalidPathException e) {
+            return NONE;
+        }
+        int id = getOrAdd(NONE, root.toString());
+        for (int i = 0, n = path.getNameCount(); i < n; i++) {
+            id = getOrAdd(id, path.getName(i).toString());
+        }
+        final byte f = flags.get(id);
+        if ((f & GROUPED) == 0) {
+            linkName(id);
+        } else {
+            unindex(id);
+        }
+        flags.set(id, (byte) (f & ~ATTRIBUTES | GROUPED | attributes & ATTRIBUTES));
+        setMetadata(id, lastModified, size, creationTime, mode);
+        index(id);
+        return id;
+    }
+
+    /**
+     * Removes node {@code id} with all of its descendants, then any parent left without children that is not an
+     * indexed entry itself.
+     */
+    void remove(int id) {
+        final int parent = parents.get(id);
+        removeTree(id);
+        for (int p = parent; p != NONE && firstChildren.get(p) == NONE && (flags.get(p) & GROUPED) == 0; ) {
+            final int next = parents.get(p);
+            removeNode(p);
+            p = next;
+        }
+    }
+
+    void forEachChild(int id, IntConsumer action) {
+        for (int c = firstChildren.get(id); c != NONE; c = nextSiblings.get(c)) {
+            action.accept(c);
+        }
+    }
+
+    /**
+     * Passes node {@code id} and all of its descendants, parents before their children.
+     */
+    void forEachInTree(int id, IntConsumer action) {
+        // pre-order, without recursion: descend to the first child, else move on to the next sibling of the
+        // node or of its closest ancestor that has one.
+        int n = id;
+        while (true) {
+            action.accept(n);
+            final int child = firstChildren.get(n);
+            if (child != NONE) {
+                n = child;
+                continue;
+            }
+            while (n != id && nextSiblings.get(n) == NONE) {
+                n = parents.get(n);
+            }
+            if (n == id) {
+                return;
+            }
+            n = nextSiblings.get(n);
+        }
+    }
+
+    void forEachInGroup(int nameId, IntConsumer action) {
+        for (int n = names.getFirstNode(nameId); n != NONE; n = nextSameNames.get(n)) {
+            action.accept(n);
+        }
+    }
+
+    private int child(int parent, String name) {
+        final int nameId = names.id(name);
+        return nameId == NameTable.NONE ? NONE : children.get(key(parent, nameId));
+    }
+
+    private int getOrAdd(int parent, String name) {
+        final int nameId = names.add(name);
+        final long key = key(parent, nameId);
+        int id = children.get(key);
+        if (id != NONE) {
+            return id;
+        }
+        if (freeId != NONE) {
+            id = freeId;
+            freeId = nextSiblings.get(id);
+        } else {
+            id = count++;
+            for (IntColumn column : Arrays.asList(parents, nameIds, firstChildren, nextSiblings, prevSiblings,
+                    nextSameNames, prevSameNames)) {
+                column.ensureCapacity(count);
+            }
+            for (LongColumn column : Arrays.asList(lastModified, sizes, creationTimes)) {
+                column.ensureCapacity(count);
+            }
+            modes.ensureCapacity(count);
+            flags.ensureCapacity(count);
+        }
+        liveCount++;
+        for (IntColumn column : Arrays.asList(parents, nameIds, firstChildren, nextSiblings, prevSiblings,
+                nextSameNames, prevSameNames)) {
+            column.set(id, NONE);
+        }
+        names.retain(nameId);
+        parents.set(id, parent);
+        nameIds.set(id, nameId);
+        setMetadata(id, 0L, 0L, 0L, 0);
+        flags.set(id, LIVE);
+        if (parent != NONE) {
+            final int first = firstChildren.get(parent);
+            nextSiblings.set(id, first);
+            if (first != NONE) {
+                prevSiblings.set(first, id);
+            }
+            firstChildren.set(parent, id);
+        }
+        children.put(key, id);
+        return id;
+    }
+
+    private void removeTree(int root) {
+        // depth first, without recursion: descend to a leaf, remove it, continue with its parent.
+        int id = root;
+        while (true) {
+            final int child = firstChildren.get(id);
+            if (child != NONE) {
+                id = child;
+                continue;
+            }
+            final int parent = parents.get(id);
+            removeNode(id);
+            if (id == root) {
+                return;
+            }
+            id = parent;
+        }
+    }
+
+    private void removeNode(int id) {
+        final byte f = flags.get(id);
+        if ((f & LIVE) == 0) {
+            return;
+        }
+        if ((f & GROUPED) != 0) {
+            unlinkName(id);
+            unindex(id);
+        }
+        final int parent = parents.get(id);
+        final int prev = prevSiblings.get(id);
+        final int next = nextSiblings.get(id);
+        if (prev != NONE) {
+            nextSiblings.set(prev, next);
+        } else if (parent != NONE) {
+            firstChildren.set(parent, next);
+        }
+        if (next != NONE) {
+            prevSiblings.set(next, prev);
+        }
+        final int nameId = nameIds.get(id);
+        children.remove(key(parent, nameId));
+        names.release(nameId);
+        flags.set(id, (byte) 0);
+        parents.set(id, NONE);
+        nameIds.set(id, NONE);
+        prevSiblings.set(id, NONE);
+        nextSiblings.set(id, freeId);
+        freeId = id;
+        liveCount--;
+    }
+
+    private void setMetadata(int id, long lastModified, long size, long creationTime, int mode) {
+        this.lastModified.set(id, lastModified);
+        sizes.set(id, size);
+        creationTimes.set(id, creationTime);
+        modes.set(id, mode);
+    }
+
+    private void index(int id) {
+        if (hasSortedIndexes()) {
+            sizeIndex.add(sizes.get(id), id);
+            lastModifiedIndex.add(lastModified.get(id), id);
+        }
+    }
+
+    private void unindex(int id) {
+        if (hasSortedIndexes()) {
+            sizeIndex.remove(sizes.get(id), id);
+            lastModifiedIndex.remove(lastModified.get(id), id);
+        }
+    }
+
+    private void linkName(int id) {
+        final int nameId = nameIds.get(id);
+        final int first = names.getFirstNode(nameId);
+        nextSameNames.set(id, first);
+        prevSameNames.set(id, NONE);
+        if (first != NONE) {
+            prevSameNames.set(first, id);
+        }
+        names.setFirstNode(nameId, id);
+        if (first == NONE && listener != null) {
+            listener.nameUsed(nameId);
+        }
+    }
+
+    private void unlinkName(int id) {
+        final int nameId = nameIds.get(id);
+        final int prev = prevSameNames.get(id);
+        final int next = nextSameNames.get(id);
+        if (prev != NONE) {
+            nextSameNames.set(prev, next);
+        } else {
+            names.setFirstNode(nameId, next);
+        }
+        if (next != NONE) {
+            prevSameNames.set(next, prev);
+        }
+        nextSameNames.set(id, NONE);
+        prevSameNames.set(id, NONE);
+        if (names.getFirstNode(nameId) == NONE && listener != null) {
+            listener.nameUnused(nameId);
+        }
+    }
+
+    interface Listener {
+
+        void nameUsed(int nameId);
+
+        void nameUnused(int nameId);
+
+    }
+
+}
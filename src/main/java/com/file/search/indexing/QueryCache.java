@@ -0,0 +1,240 @@
+package com.file.search.indexing;
+
+import com.file.search.DefaultFileMatcher;
+import com.file.search.FileMatcher;
+import com.file.search.FileType;
+import com.file.search.NameMode;
+import com.file.search.util.CaseFolding;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * Least recently used results of sorted queries, bounded both in queries and in paths kept.
+ * <p>
+ * Every change to the index is passed to {@link #invalidate(Path, int)} as it is made, and drops the results it may
+ * change: those whose base directories hold the changed entry and whose name matches its name, or, for a removed
+ * directory, whose base directories overlap it. Changes are also numbered and the last {@link #EVENTS} of them kept,
+ * so that a result computed on a snapshot is only cached if none of the changes made since the snapshot was taken
+ * may change it.
+ * <p>
+ * Queries on modification time ranges are not cached, as their bounds are relative to the time they are run.
+ * The number of queries kept is set by {@link #MAX_QUERIES_PROPERTY}; none are kept at {@code 0}.
+ *
+ * @author ahmad
+ */
+final class QueryCache {
+
+    /**
+     * An entry was added or removed.
+     */
+    static final int ENTRY = 0;
+    /**
+     * An entry was removed along with the entries below it.
+     */
+    static final int TREE = 1;
+    /**
+     * The metadata of an entry changed.
+     */
+    static final int METADATA = 2;
+
+    /**
+     * System property overriding {@link #DEFAULT_MAX_QUERIES}.
+     */
+    static final String MAX_QUERIES_PROPERTY = "ffs.cachedQueries";
+
+    private static final int DEFAULT_MAX_QUERIES = 256;
+    private static final long MAX_PATHS = 1L << 20;
+    private static final int EVENTS = 1 << 12;
+
+    private final int maxQueries = Integer.getInteger(MAX_QUERIES_PROPERTY, DEFAULT_MAX_QUERIES);
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Path[] eventPaths = new Path[EVENTS];
+    private final int[] eventKinds = new int[EVENTS];
+    private long sequence;
+    private long paths;
+
+    /**
+     * Returns the key of the query of {@code matcher} for at most {@code limit} results, or {@code null} if it can
+     * not be cached.
+     */
+    static Key key(FileMatcher matcher, int limit) {
+        return matcher.hasLastModifiedRange() ? null : new Key(matcher, limit);
+    }
+
+    /**
+     * Returns the number of the next change, to be given to {@link #put(Key, List, long)} by queries on what the
+     * index is now.
+     */
+    synchronized long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns a copy of the cached result of {@code key}, or {@code null} if there is none.
+     */
+    synchronized List<Path> get(Key key) {
+        final Entry e = entries.get(key);
+        return e == null ? null : new ArrayList<>(e.result);
+    }
+
+    /**
+     * Caches a copy of {@code result}, which is as of change number {@code since}, unless a change made since may
+     * have changed it or is no longer known.
+     */
+    synchronized void put(Key key, List<Path> result, long since) {
+        if (maxQueries <= 0 || result.size() > MAX_PATHS || sequence - since > EVENTS) {
+            return;
+        }
+        final Entry e = new Entry(key, new ArrayList<>(result));
+        for (long n = since; n < sequence; n++) {
+            final int i = (int) (n & (EVENTS - 1));
+            if (e.isAffectedBy(eventPaths[i], eventKinds[i])) {
+                return;
+            }
+        }
+        final Entry previous = entries.put(key, e);
+        if (previous != null) {
+            paths -= previous.result.size();
+        }
+        paths += e.result.size();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext()
+                && (entries.size() > maxQueries || paths > MAX_PATHS); ) {
+            paths -= it.next().result.size();
+            it.remove();
+        }
+    }
+
+    /**
+     * Drops the results a change of {@code kind} to {@code path} may change.
+     */
+    synchronized void invalidate(Path path, int kind) {
+        final int i = (int) (sequence++ & (EVENTS - 1));
+        eventPaths[i] = path;
+        eventKinds[i] = kind;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            final Entry e = it.next();
+            if (e.isAffectedBy(path, kind)) {
+                paths -= e.result.size();
+                it.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        paths = 0L;
+        // results computed before are not to be cached either.
+        sequence += EVENTS + 1;
+    }
+
+    /**
+     * The parameters of a query the result depends on, with base directories in a set order, the number of edits
+     * only where it applies and a literal name matched regardless of case folded.
+     */
+    static final class Key {
+
+        private final String name;
+        private final NameMode nameMode;
+        private final int maxEdits;
+        private final boolean caseInsensitive;
+        private final boolean hiddenFilesIncluded;
+        private final List<Path> baseDirs;
+        private final FileType fileType;
+        private final long minSize;
+        private final long maxSize;
+        private final int limit;
+
+        private Key(FileMatcher matcher, int limit) {
+            nameMode = matcher.getNameMode();
+            // a literal matched regardless of case is only ever compared in its folded form.
+            name = matcher.isCaseInsensitive() && nameMode == NameMode.LITERAL
+                    ? CaseFolding.fold(matcher.getName()) : matcher.getName();
+            maxEdits = nameMode == NameMode.FUZZY ? matcher.getMaxEdits() : -1;
+            caseInsensitive = matcher.isCaseInsensitive();
+            hiddenFilesIncluded = matcher.isHiddenFilesIncluded();
+            baseDirs = new ArrayList<>(new TreeSet<>(matcher.getBaseDirectories()));
+            fileType = matcher.getFileType();
+            minSize = matcher.getMinSize();
+            maxSize = matcher.getMaxSize();
+            this.limit = limit;
+        }
+
+        /**
+         * Returns a matcher of the name of this query, of its own, as the one the query came with may change.
+         */
+        private FileMatcher nameMatcher() {
+            final FileMatcher matcher = new DefaultFileMatcher();
+            matcher.setName(name);
+            matcher.setCaseInsensitive(caseInsensitive);
+            if (maxEdits >= 0) {
+                matcher.setMaxEdits(maxEdits);
+            }
+            matcher.setNameMode(nameMode);
+            return matcher;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key k = (Key) o;
+            return maxEdits == k.maxEdits && caseInsensitive == k.caseInsensitive
+                    && hiddenFilesIncluded == k.hiddenFilesIncluded && minSize == k.minSize && maxSize == k.maxSize
+                    && limit == k.limit && name.equals(k.name) && nameMode == k.nameMode
+                    && baseDirs.equals(k.baseDirs) && fileType == k.fileType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, nameMode, maxEdits, caseInsensitive, hiddenFilesIncluded, baseDirs, fileType,
+                    minSize, maxSize, limit);
+        }
+
+    }
+
+    private static final class Entry {
+
+        private final Key key;
+        private final FileMatcher matcher;
+        private final List<Path> result;
+
+        private Entry(Key key, List<Path> result) {
+            this.key = key;
+            this.matcher = key.nameMatcher();
+            this.result = result;
+        }
+
+        private boolean isAffectedBy(Path path, int kind) {
+            if (kind == METADATA && key.minSize == Long.MIN_VALUE && key.maxSize == Long.MAX_VALUE) {
+                return false;
+            }
+            for (Path dir : key.baseDirs) {
+                if (path.startsWith(dir)) {
+                    return kind == TREE || matches(path);
+                }
+                if (kind == TREE && dir.startsWith(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(Path path) {
+            final Path name = path.getFileName();
+            return matcher.matchFileName(name != null ? name.toString() : path.toString());
+        }
+
+    }
+
+}
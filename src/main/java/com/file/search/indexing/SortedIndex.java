@@ -0,0 +1,326 @@
+package com.file.search.indexing;
+
+import java.util.Arrays;
+
+/**
+ * Secondary index of node ids sorted by a long value (e.g. size or modification time), to find the nodes with a
+ * value in a given range in log time plus the size of the range.
+ * <p>
+ * Entries are {@code (value, id)} pairs kept in order in blocks of primitive arrays, so inserting or removing an
+ * entry only shifts the rest of one block. A {@link #snapshot()} shares the blocks, which are copied the first time
+ * this index changes them afterwards. Not thread-safe.
+ *
+ * @author ahmad
+ */
+final class SortedIndex {
+
+    private static final int BLOCK_SIZE = 1 << 10;
+    private static final int FILL = BLOCK_SIZE * 3 / 4;
+
+    private Block[] blocks;
+    private int blockCount;
+    private int size;
+
+    /**
+     * Bumped by every snapshot; blocks stamped with an older version may be shared with a snapshot.
+     */
+    private int version;
+
+    SortedIndex() {
+        blocks = new Block[]{new Block(0)};
+        blockCount = 1;
+    }
+
+    private SortedIndex(Block[] blocks, int blockCount, int size, int version) {
+        this.blocks = blocks;
+        this.blockCount = blockCount;
+        this.size = size;
+        this.version = version;
+    }
+
+    /**
+     * Builds an index of {@code n} entries at once; {@code values} and {@code ids} are sorted in place.
+     */
+    static SortedIndex of(long[] values, int[] ids, int n) {
+        sort(values, ids, n);
+        final SortedIndex index = new SortedIndex();
+        index.blocks = new Block[Math.max(1, (n + FILL - 1) / FILL)];
+        index.blockCount = 0;
+        for (int from = 0; from < n || index.blockCount == 0; from += FILL) {
+            final Block block = new Block(0);
+            block.size = Math.min(FILL, n - from);
+            System.arraycopy(values, from, block.values, 0, block.size);
+            System.arraycopy(ids, from, block.ids, 0, block.size);
+            index.blocks[index.blockCount++] = block;
+        }
+        index.size = n;
+        return index;
+    }
+
+    private static int compare(long v1, int id1, long v2, int id2) {
+        final int c = Long.compare(v1, v2);
+        return c != 0 ? c : Integer.compare(id1, id2);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a read-only copy of this index as it is now, at the cost of copying the array of blocks.
+     */
+    SortedIndex snapshot() {
+        return new SortedIndex(Arrays.copyOf(blocks, blockCount), blockCount, size, ++version);
+    }
+
+    void add(long value, int id) {
+        final int b = blockOf(value, id);
+        Block block = own(b);
+        if (block.size == BLOCK_SIZE) {
+            split(b);
+            if (compare(value, id, blocks[b + 1].values[0], blocks[b + 1].ids[0]) >= 0) {
+                block = blocks[b + 1];
+            }
+        }
+        final int i = -block.search(value, id) - 1;
+        if (i < 0) {
+            return;
+        }
+        System.arraycopy(block.values, i, block.values, i + 1, block.size - i);
+        System.arraycopy(block.ids, i, block.ids, i + 1, block.size - i);
+        block.values[i] = value;
+        block.ids[i] = id;
+        block.size++;
+        size++;
+    }
+
+    void remove(long value, int id) {
+        final int b = blockOf(value, id);
+        final int i = blocks[b].search(value, id);
+        if (i < 0) {
+            return;
+        }
+        final Block block = own(b);
+        System.arraycopy(block.values, i + 1, block.values, i, block.size - i - 1);
+        System.arraycopy(block.ids, i + 1, block.ids, i, block.size - i - 1);
+        block.size--;
+        size--;
+        if (block.size == 0 && blockCount > 1) {
+            System.arraycopy(blocks, b + 1, blocks, b, blockCount - b - 1);
+            blocks[--blockCount] = null;
+        }
+    }
+
+    /**
+     * Returns the number of entries with a value in {@code [from, to]}.
+     */
+    int count(long from, long to) {
+        if (from > to) {
+            return 0;
+        }
+        int count = 0;
+        for (int b = firstBlock(from), i = blocks[b].lowerBound(from); b < blockCount; b++, i = 0) {
+            final Block block = blocks[b];
+            final int end = block.upperBound(to);
+            count += end - i;
+            if (end < block.size) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the ids of the entries with a value in {@code [from, to]}, ordered by value.
+     */
+    int[] range(long from, long to) {
+        if (from > to) {
+            return new int[0];
+        }
+        int[] ids = new int[16];
+        int n = 0;
+        for (int b = firstBlock(from), i = blocks[b].lowerBound(from); b < blockCount; b++, i = 0) {
+            final Block block = blocks[b];
+            for (; i < block.size; i++) {
+                if (block.values[i] > to) {
+                    return Arrays.copyOf(ids, n);
+                }
+                if (n == ids.length) {
+                    ids = Arrays.copyOf(ids, n << 1);
+                }
+                ids[n++] = block.ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Returns the block an entry belongs in: the last block starting at or before it, or the first block.
+     */
+    private int blockOf(long value, int id) {
+        int lo = 1;
+        int hi = blockCount - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final Block block = blocks[mid];
+            if (compare(block.values[0], block.ids[0], value, id) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo - 1;
+    }
+
+    /**
+     * Returns the first block that ends at or after {@code value}, or the last block if there is none.
+     */
+    private int firstBlock(long value) {
+        int lo = 0;
+        int hi = blockCount - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final Block block = blocks[mid];
+            if (block.size != 0 && block.values[block.size - 1] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns block {@code b}, first replaced by a copy if it may be shared with a snapshot.
+     */
+    private Block own(int b) {
+        Block block = blocks[b];
+        if (block.version != version) {
+            final Block copy = new Block(version);
+            copy.size = block.size;
+            System.arraycopy(block.values, 0, copy.values, 0, block.size);
+            System.arraycopy(block.ids, 0, copy.ids, 0, block.size);
+            blocks[b] = block = copy;
+        }
+        return block;
+    }
+
+    private void split(int b) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount << 1);
+        }
+        final Block block = blocks[b];
+        final Block next = new Block(version);
+        final int half = block.size >>> 1;
+        next.size = block.size - half;
+        System.arraycopy(block.values, half, next.values, 0, next.size);
+        System.arraycopy(block.ids, half, next.ids, 0, next.size);
+        block.size = half;
+        System.arraycopy(blocks, b + 1, blocks, b + 2, blockCount - b - 1);
+        blocks[b + 1] = next;
+        blockCount++;
+    }
+
+    /**
+     * Sorts the first {@code n} pairs by value, then id; bottom-up merge sort over the two arrays.
+     */
+    private static void sort(long[] values, int[] ids, int n) {
+        long[] v = values;
+        int[] d = ids;
+        long[] tv = new long[n];
+        int[] td = new int[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n; lo += width << 1) {
+                final int mid = Math.min(lo + width, n);
+                final int hi = Math.min(lo + (width << 1), n);
+                for (int i = lo, j = mid, k = lo; k < hi; k++) {
+                    if (i < mid && (j == hi || compare(v[i], d[i], v[j], d[j]) <= 0)) {
+                        tv[k] = v[i];
+                        td[k] = d[i++];
+                    } else {
+                        tv[k] = v[j];
+                        td[k] = d[j++];
+                    }
+                }
+            }
+            final long[] sv = v;
+            final int[] sd = d;
+            v = tv;
+            d = td;
+            tv = sv;
+            td = sd;
+        }
+        if (v != values) {
+            System.arraycopy(v, 0, values, 0, n);
+            System.arraycopy(d, 0, ids, 0, n);
+        }
+    }
+
+    private static final class Block {
+
+        private final long[] values = new long[BLOCK_SIZE];
+        private final int[] ids = new int[BLOCK_SIZE];
+        private final int version;
+        private int size;
+
+        private Block(int version) {
+            this.version = version;
+        }
+
+        /**
+         * Binary search for an entry, with the same return value as {@link Arrays#binarySearch(long[], long)}.
+         */
+        private int search(long value, int id) {
+            int lo = 0;
+            int hi = size - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final int c = compare(values[mid], ids[mid], value, id);
+                if (c < 0) {
+                    lo = mid + 1;
+                } else if (c > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        /**
+         * Returns the index of the first entry with a value of at least {@code value}.
+         */
+        private int lowerBound(long value) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (values[mid] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Returns the index of the first entry with a value greater than {@code value}.
+         */
+        private int upperBound(long value) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (values[mid] <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+    }
+
+}
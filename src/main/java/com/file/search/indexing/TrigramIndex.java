@@ -0,0 +1,225 @@
+package com.file.search.indexing;
+
+import com.file.search.util.CaseFolding;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Posting-list index from every trigram of a file name to the ids of the names containing it.
+ * Each posting list is a sorted {@code int[]}.
+ * <p>
+ * The trigrams of the {@link CaseFolding case folded} form of every name are indexed too, apart from those of the
+ * name itself, for case insensitive lookups.
+ *
+ * @author ahmad
+ */
+public final class TrigramIndex {
+
+    public static final int GRAM_LENGTH = 3;
+
+    /**
+     * Set on the trigrams of folded names, which take 48 bits otherwise.
+     */
+    private static final long FOLDED = 1L << 48;
+
+    private final Map<Long, Posting> postings = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static long gram(CharSequence s, int i) {
+        return (long) s.charAt(i) << 32 | (long) s.charAt(i + 1) << 16 | s.charAt(i + 2);
+    }
+
+    private static long[] grams(CharSequence s) {
+        final int n = s.length() - GRAM_LENGTH + 1;
+        if (n <= 0) {
+            return new long[0];
+        }
+        final long[] grams = new long[n];
+        for (int i = 0; i < n; i++) {
+            grams[i] = gram(s, i);
+        }
+        Arrays.sort(grams);
+        int distinct = 1;
+        for (int i = 1; i < n; i++) {
+            if (grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return distinct == n ? grams : Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * Returns the sorted, distinct trigrams of {@code name} followed by those of its folded form.
+     */
+    private static long[] nameGrams(String name) {
+        final long[] grams = grams(name);
+        final long[] folded = grams(CaseFolding.fold(name));
+        final long[] all = Arrays.copyOf(grams, grams.length + folded.length);
+        for (int i = 0; i < folded.length; i++) {
+            all[grams.length + i] = folded[i] | FOLDED;
+        }
+        return all;
+    }
+
+    public void add(int id, String name) {
+        final Lock w = lock.writeLock();
+        w.lock();
+        try {
+            for (long gram : nameGrams(name)) {
+                Posting posting = postings.get(gram);
+                if (posting == null) {
+                    postings.put(gram, posting = new Posting());
+                }
+                posting.add(id);
+            }
+        } finally {
+            w.unlock();
+        }
+    }
+
+    public void remove(int id, String name) {
+        remove(id, name, null);
+    }
+
+    /**
+     * Removes {@code id} from the trigrams of {@code name} that are not also trigrams of {@code kept}, the name
+     * the id has been given since, if any.
+     */
+    public void remove(int id, String name, String kept) {
+        final long[] keptGrams = kept == null ? new long[0] : nameGrams(kept);
+        final Lock w = lock.writeLock();
+        w.lock();
+        try {
+            for (long gram : nameGrams(name)) {
+                if (Arrays.binarySearch(keptGrams, gram) >= 0) {
+                    continue;
+                }
+                final Posting posting = postings.get(gram);
+                if (posting != null && posting.remove(id) && posting.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        } finally {
+            w.unlock();
+        }
+    }
+
+    public void clear() {
+        final Lock w = lock.writeLock();
+        w.lock();
+        try {
+            postings.clear();
+        } finally {
+            w.unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of every indexed name that contains all trigrams of {@code literal}, or {@code null}
+     * if the literal is too short to be looked up (callers must then scan all names).
+     * The result is a superset of the names containing {@code literal} and still has to be verified.
+     */
+    public int[] candidates(String literal) {
+        return candidates(grams(literal));
+    }
+
+    /**
+     * Same as {@link #candidates(String)}, for the names whose folded form contains {@code foldedLiteral}, which is
+     * folded already.
+     */
+    public int[] foldedCandidates(String foldedLiteral) {
+        final long[] grams = grams(foldedLiteral);
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] |= FOLDED;
+        }
+        return candidates(grams);
+    }
+
+    private int[] candidates(long[] grams) {
+        if (grams.length == 0) {
+            return null;
+        }
+        final Lock r = lock.readLock();
+        r.lock();
+        try {
+            final Posting[] lists = new Posting[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                if ((lists[i] = postings.get(grams[i])) == null) {
+                    return new int[0];
+                }
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+            final int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+            int n = result.length;
+            for (int i = 1; i < lists.length && n > 0; i++) {
+                n = lists[i].retainAll(result, n);
+            }
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        } finally {
+            r.unlock();
+        }
+    }
+
+    private static final class Posting {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            if (size == 0 || ids[size - 1] < id) {
+                ids[size++] = id;
+                return;
+            }
+            final int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) {
+                final int at = -i - 1;
+                System.arraycopy(ids, at, ids, at + 1, size - at);
+                ids[at] = id;
+                size++;
+            }
+        }
+
+        private boolean remove(int id) {
+            final int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            size--;
+            if (size > 4 && size < ids.length >>> 2) {
+                ids = Arrays.copyOf(ids, ids.length >>> 1);
+            }
+            return true;
+        }
+
+        /**
+         * Keeps in the first {@code n} (sorted) entries of {@code result} only the ids of this posting list,
+         * and returns the number of entries kept.
+         */
+        private int retainAll(int[] result, int n) {
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < n && j < size; i++) {
+                final int id = result[i];
+                while (j < size && ids[j] < id) {
+                    j++;
+                }
+                if (j < size && ids[j] == id) {
+                    result[kept++] = id;
+                    j++;
+                }
+            }
+            return kept;
+        }
+
+    }
+
+}
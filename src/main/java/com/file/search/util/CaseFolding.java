@@ -0,0 +1,46 @@
+package com.file.search.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Folds names for case insensitive matching: a name is brought to Unicode normalization form KC, so that e.g.
+ * composed and decomposed accents and compatibility characters compare equal, and then its case is folded the
+ * way {@link String#toUpperCase(Locale)} followed by {@link String#toLowerCase(Locale)} does, so that e.g.
+ * {@code STRASSE} and {@code stra&szlig;e} compare equal too. Two names are equal regardless of case if their folded
+ * forms are equal, and a name contains another regardless of case if its folded form contains the other's.
+ *
+ * @author ahmad
+ */
+public final class CaseFolding {
+
+    private CaseFolding() {
+    }
+
+    public static String fold(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c >= 128) {
+                final String folded = Normalizer.normalize(name, Normalizer.Form.NFKC)
+                        .toUpperCase(Locale.ROOT)
+                        .toLowerCase(Locale.ROOT);
+                return Normalizer.normalize(folded, Normalizer.Form.NFKC);
+            }
+        }
+        // the common case: ASCII only, where folding is lowering letters.
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                final char[] folded = name.toCharArray();
+                for (int j = i; j < folded.length; j++) {
+                    if (folded[j] >= 'A' && folded[j] <= 'Z') {
+                        folded[j] += 'a' - 'A';
+                    }
+                }
+                return new String(folded);
+            }
+        }
+        return name;
+    }
+
+}
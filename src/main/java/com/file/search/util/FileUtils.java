@@ -1,16 +1,59 @@
 package com.file.search.util;
 
 import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * @author ahmad
  */
 public final class FileUtils {
 
+    public static final int S_IFDIR = 0040000;
+    public static final int S_IFREG = 0100000;
+    public static final int S_IFLNK = 0120000;
+
+    /**
+     * The most detailed attributes the default file system reads with a single stat.
+     */
+    private static final Class<? extends BasicFileAttributes> ATTRIBUTES;
+    private static final Class<? extends BasicFileAttributeView> ATTRIBUTES_VIEW;
+
+    static {
+        final Set<String> views = FileSystems.getDefault().supportedFileAttributeViews();
+        if (views.contains("posix")) {
+            ATTRIBUTES = PosixFileAttributes.class;
+            ATTRIBUTES_VIEW = PosixFileAttributeView.class;
+        } else if (views.contains("dos")) {
+            ATTRIBUTES = DosFileAttributes.class;
+            ATTRIBUTES_VIEW = DosFileAttributeView.class;
+        } else {
+            ATTRIBUTES = BasicFileAttributes.class;
+            ATTRIBUTES_VIEW = BasicFileAttributeView.class;
+        }
+    }
+
     private FileUtils() {
     }
 
@@ -24,6 +67,136 @@ public final class FileUtils {
         }
     }
 
+    /**
+     * Passes every entry of {@code dir} with its attributes, read once without following symbolic links. Where the
+     * platform has a {@link SecureDirectoryStream}, attributes are read relative to the open directory, which
+     * spares resolving every path from the root again. Unlike {@link #forEachEntry(Path, Consumer)}, entries are
+     * not checked for readability one by one; entries whose attributes can not be read are skipped, and so is a
+     * directory that can not be opened.
+     */
+    public static void forEachEntry(Path dir, BiConsumer<Path, BasicFileAttributes> action) {
+        forEachEntry(dir, path -> true, 1, chunk -> false, action);
+    }
+
+    /**
+     * Like {@link #forEachEntry(Path, BiConsumer)}, skipping the entries {@code filter} rejects before their
+     * attributes are read.
+     */
+    public static void forEachEntry(Path dir, Predicate<Path> filter, BiConsumer<Path, BasicFileAttributes> action) {
+        forEachEntry(dir, filter, 1, chunk -> false, action);
+    }
+
+    /**
+     * Like {@link #forEachEntry(Path, BiConsumer)}, reading entries in chunks of {@code chunkSize}. Every full
+     * chunk is first offered to {@code handOff}; a chunk it takes (returns {@code true} for) is left to the
+     * caller, whose attributes are not read here. The last, partial chunk is never offered. Entries
+     * {@code filter} rejects are skipped before they make it into a chunk.
+     */
+    public static void forEachEntry(Path dir, Predicate<Path> filter, int chunkSize, Predicate<List<Path>> handOff,
+                                    BiConsumer<Path, BasicFileAttributes> action) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            final SecureDirectoryStream<Path> secure = stream instanceof SecureDirectoryStream
+                    ? (SecureDirectoryStream<Path>) stream : null;
+            List<Path> chunk = new ArrayList<>(Math.min(chunkSize, 1 << 10));
+            for (Path path : stream) {
+                if (!filter.test(path)) {
+                    continue;
+                }
+                chunk.add(path);
+                if (chunk.size() == chunkSize) {
+                    if (handOff.test(chunk)) {
+                        chunk = new ArrayList<>(Math.min(chunkSize, 1 << 10));
+                    } else {
+                        forEach(secure, chunk, action);
+                        chunk.clear();
+                    }
+                }
+            }
+            forEach(secure, chunk, action);
+        } catch (AccessDeniedException | NoSuchFileException | NotDirectoryException ignored) {
+        } catch (IOException | DirectoryIteratorException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void forEach(SecureDirectoryStream<Path> dir, List<Path> entries,
+                                BiConsumer<Path, BasicFileAttributes> action) {
+        for (Path path : entries) {
+            final BasicFileAttributes attributes = dir != null
+                    ? readAttributes(dir, path.getFileName())
+                    : readAttributes(path);
+            if (attributes != null) {
+                action.accept(path, attributes);
+            }
+        }
+    }
+
+    private static BasicFileAttributes readAttributes(SecureDirectoryStream<Path> dir, Path name) {
+        try {
+            return dir.getFileAttributeView(name, ATTRIBUTES_VIEW, LinkOption.NOFOLLOW_LINKS).readAttributes();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the attributes of {@code path} itself (symbolic links are not followed), or returns {@code null}
+     * if they can not be read.
+     */
+    public static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return readAttributes(path, false);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the attributes of {@code path}, or of its target if it is a symbolic link and {@code followLinks};
+     * these are {@link PosixFileAttributes} or {@link DosFileAttributes}
+     * where the file system has them, so that {@link #mode(BasicFileAttributes)} and
+     * {@link #isHidden(Path, BasicFileAttributes)} need no further stat.
+     */
+    public static BasicFileAttributes readAttributes(Path path, boolean followLinks) throws IOException {
+        return followLinks
+                ? Files.readAttributes(path, ATTRIBUTES)
+                : Files.readAttributes(path, ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Returns the type and permission bits of an entry, laid out like {@code st_mode}. Permissions are only
+     * known for {@link PosixFileAttributes}, and types other than directory, regular file and symbolic link
+     * are left out.
+     */
+    public static int mode(BasicFileAttributes attributes) {
+        int mode = 0;
+        if (attributes.isDirectory()) {
+            mode = S_IFDIR;
+        } else if (attributes.isRegularFile()) {
+            mode = S_IFREG;
+        } else if (attributes.isSymbolicLink()) {
+            mode = S_IFLNK;
+        }
+        if (attributes instanceof PosixFileAttributes) {
+            for (PosixFilePermission permission : ((PosixFileAttributes) attributes).permissions()) {
+                // OWNER_READ .. OTHERS_EXECUTE are declared in the order of the bits, from 0400 down to 01.
+                mode |= 0400 >> permission.ordinal();
+            }
+        }
+        return mode;
+    }
+
+    public static boolean isHidden(Path path, BasicFileAttributes attributes) {
+        if (attributes instanceof DosFileAttributes) {
+            return ((DosFileAttributes) attributes).isHidden();
+        }
+        try {
+            return Files.isHidden(path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     private static class AccessibleFilter implements DirectoryStream.Filter<Path> {
 
         static final AccessibleFilter FILTER = new AccessibleFilter();
@@ -0,0 +1,205 @@
+package com.file.search.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compiled glob matching whole names: {@code *} matches any run of characters, {@code ?} any single character,
+ * {@code [...]} any character of a set of characters and ranges ({@code [!...]} or {@code [^...]} any character
+ * not in it), and {@code \} escapes the next character.
+ * <p>
+ * Names are matched in one pass that only ever goes back to the last {@code *} seen, so a match takes at most
+ * the length of the name times the length of the glob, and usually just the length of the name.
+ *
+ * @author ahmad
+ */
+public final class Glob {
+
+    private static final int STAR = -1;
+    private static final int ANY = -2;
+    /**
+     * Tokens below this one stand for character class {@code CLASS - token}.
+     */
+    private static final int CLASS = -3;
+
+    /**
+     * Code points, or one of {@link #STAR}, {@link #ANY} or a character class.
+     */
+    private final int[] tokens;
+    /**
+     * Sorted, inclusive bounds of the ranges of every character class.
+     */
+    private final int[][] classes;
+    private final boolean[] negated;
+    private final boolean ignoreCase;
+    private final List<String> literals;
+
+    /**
+     * @param ignoreCase match ASCII letters regardless of case, like {@link java.util.regex.Pattern#CASE_INSENSITIVE}.
+     */
+    public Glob(String glob, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        final int[] tokens = new int[glob.length()];
+        final List<int[]> classes = new ArrayList<>();
+        final List<Boolean> negated = new ArrayList<>();
+        final List<String> literals = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        int n = 0;
+        for (int i = 0; i < glob.length(); ) {
+            final int c = glob.codePointAt(i);
+            i += Character.charCount(c);
+            int token = c;
+            if (c == '*') {
+                token = STAR;
+            } else if (c == '?') {
+                token = ANY;
+            } else if (c == '\\' && i < glob.length()) {
+                token = glob.codePointAt(i);
+                i += Character.charCount(token);
+            } else if (c == '[') {
+                final int end = classEnd(glob, i);
+                if (end >= 0) {
+                    final boolean negate = glob.charAt(i) == '!' || glob.charAt(i) == '^';
+                    classes.add(parseClass(glob, negate ? i + 1 : i, end));
+                    negated.add(negate);
+                    token = CLASS - (classes.size() - 1);
+                    i = end + 1;
+                }
+            }
+            if (token >= 0) {
+                literal.appendCodePoint(token);
+            } else if (literal.length() > 0) {
+                literals.add(literal.toString());
+                literal.setLength(0);
+            }
+            // a run of stars matches what a single one does.
+            if (token != STAR || n == 0 || tokens[n - 1] != STAR) {
+                tokens[n++] = token;
+            }
+        }
+        if (literal.length() > 0) {
+            literals.add(literal.toString());
+        }
+        this.tokens = Arrays.copyOf(tokens, n);
+        this.classes = classes.toArray(new int[0][]);
+        this.negated = new boolean[negated.size()];
+        for (int i = 0; i < this.negated.length; i++) {
+            this.negated[i] = negated.get(i);
+        }
+        this.literals = Collections.unmodifiableList(literals);
+    }
+
+    /**
+     * Returns where the class starting at {@code from} (just after its {@code [}) ends, or {@code -1} if it is
+     * not closed. A {@code ]} right after the {@code [} or its negation belongs to the class.
+     */
+    private static int classEnd(String glob, int from) {
+        int i = from;
+        if (i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^')) {
+            i++;
+        }
+        if (i < glob.length() && glob.charAt(i) == ']') {
+            i++;
+        }
+        for (; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] parseClass(String glob, int from, int end) {
+        final List<int[]> ranges = new ArrayList<>();
+        for (int i = from; i < end; ) {
+            int c = glob.codePointAt(i);
+            if (c == '\\') {
+                c = glob.codePointAt(++i);
+            }
+            i += Character.charCount(c);
+            int last = c;
+            if (i + 1 < end && glob.charAt(i) == '-') {
+                last = glob.codePointAt(i + 1);
+                if (last == '\\' && i + 2 < end) {
+                    last = glob.codePointAt(i + 2);
+                    i++;
+                }
+                i += 1 + Character.charCount(last);
+            }
+            if (c <= last) {
+                ranges.add(new int[]{c, last});
+            }
+        }
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+        final int[] bounds = new int[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            bounds[2 * i] = ranges.get(i)[0];
+            bounds[2 * i + 1] = ranges.get(i)[1];
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the runs of plain characters of the glob, in the case they were written in; every matching name
+     * contains all of them.
+     */
+    public List<String> literals() {
+        return literals;
+    }
+
+    public boolean matches(String name) {
+        int t = 0;
+        int i = 0;
+        // where the last star was and how much of the name it swallows so far.
+        int star = -1;
+        int starEnd = 0;
+        while (i < name.length()) {
+            final int c = name.codePointAt(i);
+            if (t < tokens.length && tokens[t] == STAR) {
+                star = ++t;
+                starEnd = i;
+            } else if (t < tokens.length && matches(tokens[t], c)) {
+                t++;
+                i += Character.charCount(c);
+            } else if (star >= 0) {
+                t = star;
+                starEnd += Character.charCount(name.codePointAt(starEnd));
+                i = starEnd;
+            } else {
+                return false;
+            }
+        }
+        while (t < tokens.length && tokens[t] == STAR) {
+            t++;
+        }
+        return t == tokens.length;
+    }
+
+    private boolean matches(int token, int c) {
+        if (token == ANY) {
+            return true;
+        }
+        if (token <= CLASS) {
+            final int k = CLASS - token;
+            final boolean in = inClass(classes[k], c)
+                    || ignoreCase && c < 128 && Character.isLetter(c) && inClass(classes[k], c ^ 0x20);
+            return in != negated[k];
+        }
+        return token == c || ignoreCase && c < 128 && Character.isLetter(c) && token == (c ^ 0x20);
+    }
+
+    private static boolean inClass(int[] bounds, int c) {
+        for (int i = 0; i < bounds.length && bounds[i] <= c; i += 2) {
+            if (c <= bounds[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.file.search.util;
+
+/**
+ * Accepts the names within a number of edits of a query: inserting, deleting or substituting a character, or
+ * swapping two adjacent ones (as in {@code cofnig} for {@code config}), each count as one edit.
+ * <p>
+ * A state is the row of edit distances between the input so far and every prefix of the query, capped at one more
+ * than the maximum number of edits. Rows are handed in by the caller, so that a walk over names sorted by their
+ * code points keeps the rows of the prefix a name shares with the one before it and only steps through the rest.
+ * The smallest distance of a row never decreases with more input, so once it is past the bound no name with that
+ * prefix can match.
+ * <p>
+ * Ignoring case folds ASCII letters only, like {@link java.util.regex.Pattern#CASE_INSENSITIVE}. Immutable, and so
+ * may be used by any number of threads.
+ *
+ * @author ahmad
+ */
+public final class LevenshteinAutomaton {
+
+    private final int[] query;
+    private final int maxEdits;
+    private final boolean ignoreCase;
+
+    public LevenshteinAutomaton(String query, int maxEdits, boolean ignoreCase) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("negative maximum number of edits : " + maxEdits);
+        }
+        this.ignoreCase = ignoreCase;
+        this.maxEdits = maxEdits;
+        this.query = query.codePoints().map(this::fold).toArray();
+    }
+
+    /**
+     * Returns the number of edits allowed for {@code query} when none is given: none up to two characters, one
+     * up to five and two beyond that.
+     */
+    public static int defaultMaxEdits(String query) {
+        final int length = query.codePointCount(0, query.length());
+        return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+    }
+
+    public int maxEdits() {
+        return maxEdits;
+    }
+
+    /**
+     * @return the number of entries in a state.
+     */
+    public int width() {
+        return query.length + 1;
+    }
+
+    /**
+     * Fills {@code row} with the start state, before any input.
+     */
+    public void start(int[] row) {
+        for (int i = 0; i < row.length; i++) {
+            row[i] = Math.min(i, maxEdits + 1);
+        }
+    }
+
+    /**
+     * Fills {@code next} with the state after input {@code c} in state {@code row}. {@code before} is the state
+     * before {@code row} and {@code previous} the input that led from it to {@code row}, or {@code null} and
+     * {@code -1} at the start.
+     */
+    public void step(int[] before, int previous, int[] row, int c, int[] next) {
+        final int cap = maxEdits + 1;
+        c = fold(c);
+        next[0] = Math.min(row[0] + 1, cap);
+        for (int i = 1; i < next.length; i++) {
+            int d = Math.min(row[i - 1] + (query[i - 1] == c ? 0 : 1), Math.min(row[i], next[i - 1]) + 1);
+            if (before != null && i > 1 && query[i - 1] == fold(previous) && query[i - 2] == c) {
+                d = Math.min(d, before[i - 2] + 1);
+            }
+            next[i] = Math.min(d, cap);
+        }
+    }
+
+    /**
+     * Tells whether some input after state {@code row} may end within {@code bound} edits of the query.
+     */
+    public static boolean canMatch(int[] row, int bound) {
+        for (int d : row) {
+            if (d <= bound) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of edits between the input that led to state {@code row} and the query, or one more
+     * than the maximum if there are more.
+     */
+    public static int distance(int[] row) {
+        return row[row.length - 1];
+    }
+
+    /**
+     * Returns the number of edits between {@code name} and the query, or one more than the maximum if there are
+     * more.
+     */
+    public int distance(String name) {
+        int[] before = null;
+        int[] row = new int[width()];
+        int[] next = new int[width()];
+        start(row);
+        int previous = -1;
+        for (int i = 0; i < name.length(); ) {
+            final int c = name.codePointAt(i);
+            i += Character.charCount(c);
+            step(before, previous, row, c, next);
+            if (!canMatch(next, maxEdits)) {
+                return maxEdits + 1;
+            }
+            final int[] free = before != null ? before : new int[width()];
+            before = row;
+            row = next;
+            next = free;
+            previous = c;
+        }
+        return distance(row);
+    }
+
+    private int fold(int c) {
+        return ignoreCase && c < 128 && Character.isUpperCase(c) ? c ^ 0x20 : c;
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.file.search.util;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Trie of directories keyed by path element, to find every directory a path lies in with one walk down the path.
+ * Directories are referred to by their index in the list the trie was built from.
+ *
+ * @author ahmad
+ */
+public final class PathTrie {
+
+    private static final int[] NO_DIRS = new int[0];
+
+    private final Node root = new Node();
+
+    public PathTrie(List<Path> dirs) {
+        for (int i = 0; i < dirs.size(); i++) {
+            final Path dir = dirs.get(i);
+            Node node = root.child(key(dir.getRoot()), true);
+            for (int j = 0, n = dir.getNameCount(); j < n; j++) {
+                node = node.child(dir.getName(j).toString(), true);
+            }
+            node.dirs = Arrays.copyOf(node.dirs, node.dirs.length + 1);
+            node.dirs[node.dirs.length - 1] = i;
+        }
+    }
+
+    private static String key(Path root) {
+        return root == null ? "" : root.toString();
+    }
+
+    /**
+     * Passes the index of every directory that is {@code path} itself or one of its parents, outermost first.
+     */
+    public void forEachMatch(Path path, IntConsumer action) {
+        Node node = root.child(key(path.getRoot()), false);
+        for (int i = 0, n = path.getNameCount(); node != null; i++) {
+            for (int dir : node.dirs) {
+                action.accept(dir);
+            }
+            if (i == n || node.children == null) {
+                return;
+            }
+            node = node.child(path.getName(i).toString(), false);
+        }
+    }
+
+    /**
+     * Returns the index of the first listed directory containing {@code path}, or {@code -1} if there is none.
+     */
+    public int firstMatch(Path path) {
+        final int[] first = {-1};
+        forEachMatch(path, dir -> {
+            if (first[0] < 0 || dir < first[0]) {
+                first[0] = dir;
+            }
+        });
+        return first[0];
+    }
+
+    public boolean matches(Path path) {
+        Node node = root.child(key(path.getRoot()), false);
+        for (int i = 0, n = path.getNameCount(); node != null; i++) {
+            if (node.dirs.length != 0) {
+                return true;
+            }
+            if (i == n || node.children == null) {
+                return false;
+            }
+            node = node.child(path.getName(i).toString(), false);
+        }
+        return false;
+    }
+
+    private static final class Node {
+
+        private Map<String, Node> children;
+        private int[] dirs = NO_DIRS;
+
+        private Node child(String name, boolean create) {
+            if (children == null) {
+                if (!create) {
+                    return null;
+                }
+                children = new HashMap<>();
+            }
+            Node child = children.get(name);
+            if (child == null && create) {
+                children.put(name, child = new Node());
+            }
+            return child;
+        }
+
+    }
+
+}
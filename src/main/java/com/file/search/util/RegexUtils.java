@@ -1,5 +1,8 @@
 package com.file.search.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -16,4 +19,179 @@ public final class RegexUtils {
         return SPECIAL_REGEX_CHARS.matcher(s).replaceAll("\\\\$0");
     }
 
+    /**
+     * Returns runs of plain characters that every string with a match of {@code regex} contains, in the case they
+     * were written in; empty if none are known. Only the top level of the expression is looked at, and nothing is
+     * returned for one with a top level alternation, inline flags or quoting.
+     */
+    public static List<String> requiredLiterals(String regex) {
+        if (regex.contains("\\Q")) {
+            return Collections.emptyList();
+        }
+        final List<String> literals = new ArrayList<>();
+        final StringBuilder run = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            switch (c) {
+                case '|':
+                    return Collections.emptyList();
+                case '(':
+                    flush(run, literals);
+                    i = groupEnd(regex, i);
+                    if (i < 0) {
+                        return Collections.emptyList();
+                    }
+                    break;
+                case '[':
+                    flush(run, literals);
+                    i = classEnd(regex, i);
+                    break;
+                case '\\':
+                    if (i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                        run.append(regex.charAt(++i));
+                    } else {
+                        flush(run, literals);
+                        i = escapeEnd(regex, i);
+                    }
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                case '+':
+                    flush(run, literals);
+                    break;
+                case '*':
+                case '?':
+                    // the quantified character may be left out.
+                    dropLast(run);
+                    flush(run, literals);
+                    break;
+                case '{':
+                    final int end = regex.indexOf('}', i);
+                    if (end < 0 || !regex.substring(i + 1, end).matches("[1-9][0-9]*(,[0-9]*)?")) {
+                        dropLast(run);
+                    }
+                    flush(run, literals);
+                    i = end < 0 ? regex.length() : end;
+                    break;
+                default:
+                    run.append(c);
+            }
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    private static void dropLast(StringBuilder run) {
+        if (run.length() > 0) {
+            run.setLength(run.length() - (Character.isLowSurrogate(run.charAt(run.length() - 1)) && run.length() > 1 ? 2 : 1));
+        }
+    }
+
+    /**
+     * Returns where the group opened at {@code start} is closed, or {@code -1} if it sets inline flags (which may
+     * change how the rest is matched) or is not closed.
+     */
+    private static int groupEnd(String regex, int start) {
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            switch (regex.charAt(i)) {
+                case '(':
+                    if (i + 2 < regex.length() && regex.charAt(i + 1) == '?'
+                            && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                        return -1;
+                    }
+                    depth++;
+                    break;
+                case ')':
+                    if (--depth == 0) {
+                        return i;
+                    }
+                    break;
+                case '[':
+                    i = classEnd(regex, i);
+                    break;
+                case '\\':
+                    i++;
+                    break;
+                default:
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns where the character class opened at {@code start} is closed, taking nested classes, such as those of
+     * {@code [a-z&&[^aeiou]]}, into account. As in {@link Pattern}, a {@code ]} right after the {@code [} or
+     * {@code [^} opening a class stands for itself.
+     */
+    private static int classEnd(String regex, int start) {
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            switch (regex.charAt(i)) {
+                case '[':
+                    depth++;
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                        i++;
+                    }
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                        i++;
+                    }
+                    break;
+                case ']':
+                    if (--depth == 0) {
+                        return i;
+                    }
+                    break;
+                case '\\':
+                    i++;
+                    break;
+                default:
+            }
+        }
+        return regex.length();
+    }
+
+    /**
+     * Returns where the escape sequence starting at {@code start} ends, e.g. {@code \d}, {@code \x{263A}} or
+     * {@code \p{Lu}}.
+     */
+    private static int escapeEnd(String regex, int start) {
+        int i = start + 1;
+        if (i >= regex.length()) {
+            return i;
+        }
+        switch (regex.charAt(i)) {
+            case 'x':
+            case 'p':
+            case 'P':
+            case 'N':
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '{') {
+                    final int end = regex.indexOf('}', i);
+                    return end < 0 ? regex.length() : end;
+                }
+                return Math.min(i + (regex.charAt(i) == 'x' ? 2 : 1), regex.length() - 1);
+            case 'u':
+                return Math.min(i + 4, regex.length() - 1);
+            case 'c':
+                return Math.min(i + 1, regex.length() - 1);
+            case 'k':
+                final int end = regex.indexOf('>', i);
+                return end < 0 ? regex.length() : end;
+            default:
+                // octal escapes and back references go on as long as there are digits.
+                while (Character.isDigit(regex.charAt(i)) && i + 1 < regex.length() && Character.isDigit(regex.charAt(i + 1))) {
+                    i++;
+                }
+                return i;
+        }
+    }
+
 }
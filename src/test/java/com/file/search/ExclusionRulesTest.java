@@ -0,0 +1,162 @@
+package com.file.search;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author ahmad
+ */
+public class ExclusionRulesTest {
+
+    private static final BasicFileAttributes FILE = new Attributes(false);
+    private static final BasicFileAttributes DIRECTORY = new Attributes(true);
+
+    @Test
+    public void pathsExcludeEverythingBelow() {
+        final ExclusionRules rules = rules("/proc", "/var/lib/docker/overlay2");
+        assertTrue(rules.excludes(Paths.get("/proc")));
+        assertTrue(rules.excludes(Paths.get("/proc/1/status")));
+        assertTrue(rules.excludes(Paths.get("/var/lib/docker/overlay2/abc")));
+        assertFalse(rules.excludes(Paths.get("/processes")));
+        assertFalse(rules.excludes(Paths.get("/var/lib/docker")));
+    }
+
+    @Test
+    public void namesAreMatchedAnywhere() {
+        final ExclusionRules rules = rules("*.tmp", "node_modules/");
+        assertTrue(rules.excludes(Paths.get("/home/a/x.tmp")));
+        assertFalse(rules.excludes(Paths.get("/home/a/x.tmp.txt")));
+        assertFalse(rules.excludes(Paths.get("/src/node_modules")));
+        assertTrue(rules.excludes(Paths.get("/src/node_modules"), DIRECTORY));
+        assertFalse(rules.excludes(Paths.get("/src/node_modules"), FILE));
+    }
+
+    @Test
+    public void pathGlobsMatchTheLastElements() {
+        final ExclusionRules rules = rules("build/*.o", "foo/bar/", "a/**/z");
+        assertTrue(rules.excludes(Paths.get("/src/build/main.o")));
+        assertFalse(rules.excludes(Paths.get("/src/build/main.c")));
+        assertFalse(rules.excludes(Paths.get("/src/build/sub/main.o")));
+        assertTrue(rules.excludes(Paths.get("/x/foo/bar"), DIRECTORY));
+        assertFalse(rules.excludes(Paths.get("/x/foo/bar"), FILE));
+        assertFalse(rules.excludes(Paths.get("/x/bar"), DIRECTORY));
+        assertTrue(rules.excludes(Paths.get("/a/z")));
+        assertTrue(rules.excludes(Paths.get("/q/a/b/c/z")));
+        assertFalse(rules.excludes(Paths.get("/q/a/b/c/y")));
+    }
+
+    @Test
+    public void leadingSlashAnchorsGlobs() {
+        final ExclusionRules rules = rules("/home/*/.cache", "/*.swp");
+        assertTrue(rules.excludes(Paths.get("/home/ahmad/.cache")));
+        assertFalse(rules.excludes(Paths.get("/mnt/home/ahmad/.cache")));
+        assertTrue(rules.excludes(Paths.get("/x.swp")));
+        assertFalse(rules.excludes(Paths.get("/home/x.swp")));
+    }
+
+    @Test
+    public void doubleStars() {
+        final ExclusionRules rules = rules("**/logs", ".git/**");
+        assertTrue(rules.excludes(Paths.get("/var/logs")));
+        assertTrue(rules.excludes(Paths.get("/repo/.git/objects")));
+        assertTrue(rules.excludes(Paths.get("/repo/.git/objects/ab/cd")));
+        assertFalse(rules.excludes(Paths.get("/repo/.git")));
+    }
+
+    @Test
+    public void lastRuleThatAppliesDecides() {
+        final ExclusionRules rules = rules("*.log", "!keep.log", "/data", "!/data/shared", "build/", "!release/build/");
+        assertTrue(rules.excludes(Paths.get("/var/app.log")));
+        assertFalse(rules.excludes(Paths.get("/var/keep.log")));
+        assertTrue(rules.excludes(Paths.get("/data/x")));
+        assertFalse(rules.excludes(Paths.get("/data/shared/x")));
+        assertTrue(rules.excludes(Paths.get("/src/build"), DIRECTORY));
+        assertFalse(rules.excludes(Paths.get("/src/release/build"), DIRECTORY));
+        // only known to be excluded once known to be a directory.
+        assertFalse(rules.excludes(Paths.get("/src/build")));
+    }
+
+    @Test
+    public void onlyGlobsForMoreThanDirectoriesExcludeFiles() {
+        assertFalse(rules("/proc", "node_modules/", "!*.log").excludesFiles());
+        assertTrue(rules("/proc", "*.tmp").excludesFiles());
+        assertTrue(rules("node_modules/").excludes(Paths.get("/src/node_modules"), true));
+        assertFalse(rules("node_modules/").excludes(Paths.get("/src/node_modules"), false));
+    }
+
+    @Test
+    public void escapesAndComments() {
+        final ExclusionRules rules = rules("# a comment", "", "\\!bang", "\\#hash", "!", "!fs:proc");
+        assertTrue(rules.excludes(Paths.get("/x/!bang")));
+        assertTrue(rules.excludes(Paths.get("/x/#hash")));
+        assertFalse(rules.excludes(Paths.get("/x/bang")));
+        assertFalse(rules.excludes(Paths.get("/x/a comment")));
+    }
+
+    private static ExclusionRules rules(String... rules) {
+        return ExclusionRules.of(Arrays.asList(rules));
+    }
+
+    private static final class Attributes implements BasicFileAttributes {
+
+        private final boolean directory;
+
+        private Attributes(boolean directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return FileTime.fromMillis(0L);
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return FileTime.fromMillis(0L);
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return FileTime.fromMillis(0L);
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !directory;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return 0L;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.file.search.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author ahmad
+ */
+public class RegexUtilsTest {
+
+    @Test
+    public void plainRuns() {
+        assertLiterals("foo", "foo");
+        assertLiterals("foo.*bar", "foo", "bar");
+        assertLiterals("core\\.[0-9]+$", "core.");
+        assertLiterals("^\\d+abc", "abc");
+        assertLiterals("(foo)bar", "bar");
+    }
+
+    @Test
+    public void optionalCharactersAreLeftOut() {
+        assertLiterals("ab?c", "a", "c");
+        assertLiterals("a*bc", "bc");
+        assertLiterals("a{0,1}b", "b");
+        assertLiterals("ab{2}c", "ab", "c");
+    }
+
+    @Test
+    public void nothingIsKnownOfAlternationsFlagsOrQuoting() {
+        assertLiterals("foo|bar");
+        assertLiterals("(?i)foo");
+        assertLiterals("\\Qa.b\\E");
+    }
+
+    @Test
+    public void classes() {
+        assertLiterals("ab[cd]ef", "ab", "ef");
+        assertLiterals("[a-c&&[^b]]z", "z");
+        assertLiterals("[\\]]q", "q");
+    }
+
+    @Test
+    public void closingBracketFirstInClassIsLiteral() {
+        assertLiterals("[]x]yz", "yz");
+        assertLiterals("[^]x]yz", "yz");
+        assertLiterals("[a[]b]]c", "c");
+        assertLiterals("[a&&[]a]]c", "c");
+        assertLiterals("x[]]y", "x", "y");
+    }
+
+    @Test
+    public void everyNameWithAMatchContainsTheLiterals() {
+        assertContainedIn("[]x]yz", "]yz", "xyz", "a]yz");
+        assertContainedIn("[^]x]yz", "ayz", "_yz.txt");
+        assertContainedIn("[a[]b]]c", "]c", "bc");
+        assertContainedIn("core\\.[0-9]+$", "core.1", "my.core.42");
+        assertContainedIn("ab?c", "ac", "abc");
+    }
+
+    private static void assertLiterals(String regex, String... expected) {
+        assertEquals(regex, Arrays.asList(expected), RegexUtils.requiredLiterals(regex));
+    }
+
+    private static void assertContainedIn(String regex, String... names) {
+        final Pattern pattern = Pattern.compile(regex);
+        final List<String> literals = RegexUtils.requiredLiterals(regex);
+        for (String name : names) {
+            assertTrue(regex + " ~ " + name, pattern.matcher(name).find());
+            for (String literal : literals) {
+                assertTrue(regex + " requires " + literal + " of " + name, name.contains(literal));
+            }
+        }
+    }
+
+}